@@ -0,0 +1,47 @@
+package antifraud.config;
+
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+
+/**
+ * Authentication provider that answers repeat logins from the {@link CredentialCache}
+ * and only delegates (user lookup + BCrypt) on a miss.
+ */
+public class CachingAuthenticationProvider implements AuthenticationProvider {
+
+    private final AuthenticationProvider delegate;
+    private final CredentialCache credentialCache;
+
+    public CachingAuthenticationProvider(AuthenticationProvider delegate, CredentialCache credentialCache) {
+        this.delegate = delegate;
+        this.credentialCache = credentialCache;
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        String username = authentication.getName();
+        // Read the raw password before the delegate gets a chance to erase it
+        String rawPassword = authentication.getCredentials() == null ? null : authentication.getCredentials().toString();
+
+        UserDetails cached = credentialCache.lookup(username, rawPassword);
+        if (cached != null) {
+            return UsernamePasswordAuthenticationToken.authenticated(cached, null, cached.getAuthorities());
+        }
+
+        // Read before the lookup, so a role change or lock racing with it keeps the result out of the cache
+        long generation = credentialCache.generation(username);
+        Authentication result = delegate.authenticate(authentication);
+        if (result != null && result.getPrincipal() instanceof UserDetails user) {
+            credentialCache.put(username, rawPassword, user, generation);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+        return delegate.supports(authentication);
+    }
+}
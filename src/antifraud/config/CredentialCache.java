@@ -0,0 +1,158 @@
+package antifraud.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded, TTL-based cache of recently verified credentials and the loaded {@link UserDetails}.
+ * <p>
+ * HTTP Basic is stateless, so without this cache every request repeats the user
+ * lookup and a full BCrypt check. Only an HMAC of the raw password is kept, keyed
+ * with a random per-process secret, so cached entries are useless outside this JVM.
+ * Entries must be invalidated whenever the user's role, lock state or existence changes.
+ * <p>
+ * Every invalidation also bumps a generation counter of the username's stripe. Callers
+ * read it before verifying credentials and pass it to {@link #put}, which drops the
+ * entry if an invalidation ran in between, so a lookup that raced with a change
+ * never caches the old user.
+ */
+@Component
+public class CredentialCache {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    // Usernames share generation counters, so the counters don't grow with the users
+    private static final int GENERATION_STRIPES = 64;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final SecretKeySpec secret;
+    private final long ttlNanos;
+    private final int maxSize;
+
+    public CredentialCache(@Value("${antifraud.security.credential-cache.ttl:PT5M}") Duration ttl,
+                           @Value("${antifraud.security.credential-cache.max-size:10000}") int maxSize) {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        this.secret = new SecretKeySpec(key, HMAC_ALGORITHM);
+        this.ttlNanos = ttl.toNanos();
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the cached user if the same credentials were verified within the TTL, otherwise null.
+     */
+    public UserDetails lookup(String username, String rawPassword) {
+        if (maxSize <= 0 || username == null || rawPassword == null) {
+            return null;
+        }
+        String key = keyOf(username);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.expiresAt > 0) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return MessageDigest.isEqual(entry.credentialHash, hash(rawPassword)) ? entry.user : null;
+    }
+
+    /**
+     * The username's current generation, to be read before its credentials are verified.
+     */
+    public long generation(String username) {
+        return username == null ? 0 : generations.get(stripeOf(keyOf(username)));
+    }
+
+    /**
+     * Records credentials that were just verified against the database, unless the
+     * user was invalidated since {@code generation} was read.
+     */
+    public void put(String username, String rawPassword, UserDetails user, long generation) {
+        if (maxSize <= 0 || username == null || rawPassword == null) {
+            return;
+        }
+        String key = keyOf(username);
+        int stripe = stripeOf(key);
+        if (generations.get(stripe) != generation) {
+            return;
+        }
+        if (entries.size() >= maxSize) {
+            evict();
+        }
+        Entry entry = new Entry(user, hash(rawPassword), System.nanoTime() + ttlNanos);
+        entries.put(key, entry);
+        // An invalidation between the check and the put bumped the generation before removing
+        if (generations.get(stripe) != generation) {
+            entries.remove(key, entry);
+        }
+    }
+
+    public void invalidate(String username) {
+        String key = keyOf(username);
+        generations.incrementAndGet(stripeOf(key));
+        entries.remove(key);
+    }
+
+    public void invalidateAll() {
+        for (int i = 0; i < GENERATION_STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
+        entries.clear();
+    }
+
+    // Drops expired entries first, then arbitrary ones until there is room
+    private void evict() {
+        long now = System.nanoTime();
+        entries.values().removeIf(entry -> now - entry.expiresAt > 0);
+        Iterator<String> keys = entries.keySet().iterator();
+        while (entries.size() >= maxSize && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    private byte[] hash(String rawPassword) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(secret);
+            return mac.doFinal(rawPassword.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 is not available", e);
+        }
+    }
+
+    // Usernames are matched case-insensitively, like UserRepository.findByUsernameIgnoreCase
+    private static String keyOf(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+
+    private static int stripeOf(String key) {
+        return Math.floorMod(key.hashCode(), GENERATION_STRIPES);
+    }
+
+    private static final class Entry {
+        final UserDetails user;
+        final byte[] credentialHash;
+        final long expiresAt;
+
+        Entry(UserDetails user, byte[] credentialHash, long expiresAt) {
+            this.user = user;
+            this.credentialHash = credentialHash;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -6,6 +6,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
@@ -21,11 +23,14 @@ public class SecurityConfig {
 
     private final RestAuthenticationEntryPoint restAuthenticationEntryPoint;
     private final UserRepository userRepository;
+    private final CredentialCache credentialCache;
 
     @Autowired
-    public SecurityConfig(RestAuthenticationEntryPoint restAuthenticationEntryPoint, UserRepository userRepository) {
+    public SecurityConfig(RestAuthenticationEntryPoint restAuthenticationEntryPoint, UserRepository userRepository,
+                          CredentialCache credentialCache) {
         this.restAuthenticationEntryPoint = restAuthenticationEntryPoint;
         this.userRepository = userRepository;
+        this.credentialCache = credentialCache;
     }
 
     @Bean
@@ -45,20 +50,32 @@ public class SecurityConfig {
                         .requestMatchers(HttpMethod.PUT, "/api/auth/role").hasRole(UserRole.ADMINISTRATOR.name())
                         .requestMatchers(HttpMethod.PUT, "/api/auth/access").hasRole(UserRole.ADMINISTRATOR.name())
                         .requestMatchers(HttpMethod.POST, "/api/antifraud/transaction").hasRole(UserRole.MERCHANT.name())
+                        .requestMatchers(HttpMethod.POST, "/api/antifraud/transactions/batch").hasRole(UserRole.MERCHANT.name())
                         .requestMatchers("/api/antifraud/suspicious-ip/**").hasRole(UserRole.SUPPORT.name())
                         .requestMatchers("/api/antifraud/stolencard/**").hasRole(UserRole.SUPPORT.name())
 
                         .requestMatchers(HttpMethod.PUT, "/api/antifraud/transaction").hasRole(UserRole.SUPPORT.name())
+                        .requestMatchers(HttpMethod.PUT, "/api/antifraud/transactions/feedback").hasRole(UserRole.SUPPORT.name())
                         .requestMatchers("/api/antifraud/history/**").hasRole(UserRole.SUPPORT.name())
+                        .requestMatchers("/api/antifraud/stats/**").hasRole(UserRole.SUPPORT.name())
 
                         .anyRequest().authenticated()
                 )
                 .sessionManagement(session -> session
                         .sessionCreationPolicy(SessionCreationPolicy.STATELESS))
-                .userDetailsService(userDetailsService())
+                .authenticationProvider(authenticationProvider())
                 .build();
     }
 
+    // Repeat requests with already verified credentials skip the user lookup and BCrypt
+    @Bean
+    public AuthenticationProvider authenticationProvider() {
+        DaoAuthenticationProvider daoProvider = new DaoAuthenticationProvider();
+        daoProvider.setUserDetailsService(userDetailsService());
+        daoProvider.setPasswordEncoder(passwordEncoder());
+        return new CachingAuthenticationProvider(daoProvider, credentialCache);
+    }
+
     @Bean
     public UserDetailsService userDetailsService() {
         return username -> userRepository.findByUsernameIgnoreCase(username)
@@ -0,0 +1,36 @@
+package antifraud.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves {@code transactions_seq} past the highest existing transaction ID.
+ * <p>
+ * Databases created while transaction IDs were IDENTITY columns have rows but a
+ * freshly created sequence starting at 1. Without this, the first batched insert
+ * would collide with existing IDs.
+ */
+@Component
+public class TransactionSequenceInitializer {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Depends on the EntityManagerFactory so Hibernate has created/updated the schema first
+    @Autowired
+    public TransactionSequenceInitializer(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void alignSequence() {
+        Long maxId = jdbcTemplate.queryForObject("SELECT MAX(transaction_id) FROM transactions", Long.class);
+        Long nextValue = jdbcTemplate.queryForObject(
+                "SELECT BASE_VALUE FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = 'TRANSACTIONS_SEQ'", Long.class);
+        if (maxId != null && nextValue != null && nextValue <= maxId) {
+            jdbcTemplate.execute("ALTER SEQUENCE transactions_seq RESTART WITH " + (maxId + 1));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package antifraud.controller;
+
+import antifraud.dto.FraudStatsResponse;
+import antifraud.service.TransactionRollups;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+@RestController
+@RequestMapping("/api/antifraud/stats")
+public class FraudStatsController {
+
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+    private final TransactionRollups rollups;
+
+    @Autowired
+    public FraudStatsController(TransactionRollups rollups) {
+        this.rollups = rollups;
+    }
+
+    /**
+     * Statistics of the transactions dated from {@code from} (inclusive) to {@code to}
+     * (exclusive), both truncated to the minute. Without {@code to} the range ends after
+     * the newest transaction; without {@code from} it covers the hour before {@code to}.
+     * With {@code step} (minutes) the response also holds a series with one entry per step.
+     */
+    @GetMapping
+    public ResponseEntity<FraudStatsResponse> getStats(@RequestParam(required = false) String from,
+                                                       @RequestParam(required = false) String to,
+                                                       @RequestParam(required = false) Integer step) {
+        return ResponseEntity.ok(rollups.query(parseDate(from), parseDate(to), step));
+    }
+
+    private static LocalDateTime parseDate(String date) {
+        if (date == null) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(date, DATE_TIME_FORMATTER);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date format! Use format yyyy-MM-dd'T'HH:mm:ss");
+        }
+    }
+}
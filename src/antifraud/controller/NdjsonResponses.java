@@ -0,0 +1,57 @@
+package antifraud.controller;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streaming newline delimited JSON responses, one value per line, gzip compressed
+ * when the client accepts it. Values are written as the source produces them, so
+ * the response size doesn't affect memory use.
+ */
+final class NdjsonResponses {
+
+    private NdjsonResponses() {
+    }
+
+    /**
+     * @param writer a writer that doesn't indent, so every value stays on one line
+     * @param source passes each value to the consumer it is given
+     */
+    static <T> ResponseEntity<StreamingResponseBody> stream(ObjectWriter writer, String acceptEncoding,
+                                                            Consumer<Consumer<T>> source) {
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        StreamingResponseBody body = out -> {
+            OutputStream target = gzip ? new GZIPOutputStream(out, 8192, true) : out;
+            try {
+                source.accept(value -> {
+                    try {
+                        target.write(writer.writeValueAsBytes(value));
+                        target.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (gzip) {
+                ((GZIPOutputStream) target).finish();
+            }
+            target.flush();
+        };
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+}
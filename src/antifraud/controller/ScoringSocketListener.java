@@ -0,0 +1,505 @@
+package antifraud.controller;
+
+import antifraud.dto.BinaryScoringProtocol;
+import antifraud.dto.BinaryTransactionRequest;
+import antifraud.dto.ScoringFrameProtocol;
+import antifraud.model.ScoringOutcome;
+import antifraud.model.UserRole;
+import antifraud.service.TransactionService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Optional TCP listener for scoring, for trusted gateways that don't need the
+ * servlet stack. It speaks {@link ScoringFrameProtocol} frames and scores through
+ * the same {@link TransactionService} as the HTTP endpoints.
+ * <p>
+ * One selector thread accepts connections, reads and decodes frames, and writes
+ * responses. Scoring runs on a worker pool, so a connection can have many requests
+ * in flight. A connection authenticates once, with the credentials and MERCHANT role
+ * the HTTP endpoints require.
+ * <p>
+ * Backpressure: when a connection reaches its in-flight or unsent-response limit, or
+ * all connections together reach the global in-flight limit, the listener stops
+ * reading from it until responses go out. Unread frames stay in the socket buffers,
+ * so TCP flow control pushes back on the client.
+ * <p>
+ * On shutdown it stops accepting and reading, waits for in-flight requests to be
+ * answered, and closes the connections before the rest of the application stops.
+ */
+@Component
+public class ScoringSocketListener implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(ScoringSocketListener.class);
+
+    private static final String MERCHANT_AUTHORITY = "ROLE_" + UserRole.MERCHANT.name();
+    private static final long SHUTDOWN_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private final TransactionService transactionService;
+    private final AuthenticationProvider authenticationProvider;
+    private final boolean enabled;
+    private final String bindAddress;
+    private final int port;
+    private final int workerCount;
+    private final int maxInFlightPerConnection;
+    private final int maxInFlight;
+
+    // Requests handed to workers and not answered yet, over all connections
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // Connections with new responses or finished work, picked up by the selector thread
+    private final Queue<Connection> ready = new ConcurrentLinkedQueue<>();
+    // Selector thread only
+    private final Set<Connection> connections = new HashSet<>();
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private ExecutorService workers;
+    private Thread selectorThread;
+    private volatile boolean running;
+    private volatile boolean draining;
+    private volatile long stopDeadline;
+
+    @Autowired
+    public ScoringSocketListener(TransactionService transactionService,
+                                 AuthenticationProvider authenticationProvider,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${antifraud.listener.enabled:false}") boolean enabled,
+                                 @Value("${antifraud.listener.bind-address:127.0.0.1}") String bindAddress,
+                                 @Value("${antifraud.listener.port:28080}") int port,
+                                 @Value("${antifraud.listener.workers:0}") int workerCount,
+                                 @Value("${antifraud.listener.max-in-flight-per-connection:256}") int maxInFlightPerConnection,
+                                 @Value("${antifraud.listener.max-in-flight:4096}") int maxInFlight) {
+        this.transactionService = transactionService;
+        this.authenticationProvider = authenticationProvider;
+        this.enabled = enabled;
+        this.bindAddress = bindAddress;
+        this.port = port;
+        this.workerCount = workerCount > 0 ? workerCount : 2 * Runtime.getRuntime().availableProcessors();
+        this.maxInFlightPerConnection = maxInFlightPerConnection;
+        this.maxInFlight = maxInFlight;
+        if (enabled) {
+            Gauge.builder("antifraud.listener.inflight", inFlight, AtomicInteger::get)
+                    .description("Scoring requests from the TCP listener waiting for a result")
+                    .register(meterRegistry);
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!enabled || running) {
+            return;
+        }
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.configureBlocking(false);
+            serverChannel.bind(new InetSocketAddress(bindAddress, port));
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            throw new IllegalStateException("Scoring listener could not bind " + bindAddress + ":" + port, e);
+        }
+        AtomicInteger workerNumber = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(workerCount,
+                runnable -> new Thread(runnable, "scoring-listener-worker-" + workerNumber.incrementAndGet()));
+        running = true;
+        selectorThread = new Thread(this::runSelector, "scoring-listener");
+        selectorThread.start();
+        log.info("Scoring listener accepting connections on {}:{}", bindAddress, port);
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        stopDeadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MS;
+        draining = true;
+        selector.wakeup();
+        try {
+            while (inFlight.get() > 0 && System.currentTimeMillis() < stopDeadline) {
+                Thread.sleep(10);
+            }
+            // The selector thread keeps writing until the last responses are out or time is up
+            running = false;
+            selector.wakeup();
+            selectorThread.join(Math.max(1, stopDeadline - System.currentTimeMillis()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdown();
+        if (inFlight.get() > 0) {
+            log.warn("Scoring listener stopped with {} requests unanswered", inFlight.get());
+        } else {
+            log.info("Scoring listener stopped");
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // The default phase stops first, before the web server and write-behind
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE;
+    }
+
+    private void runSelector() {
+        try {
+            while (running || (hasPendingOutput() && System.currentTimeMillis() < stopDeadline)) {
+                selector.select(running ? 0 : 100);
+                if (draining && serverChannel.isOpen()) {
+                    closeQuietly(serverChannel);
+                    for (Connection connection : new ArrayList<>(connections)) {
+                        connection.updateInterest();
+                    }
+                }
+                processReady();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isReadable()) {
+                        connection.read();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.write();
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            log.error("Scoring listener selector failed", e);
+        } finally {
+            for (Connection connection : new ArrayList<>(connections)) {
+                connection.close();
+            }
+            closeQuietly(serverChannel);
+            closeQuietly(selector);
+        }
+    }
+
+    private void accept() {
+        SocketChannel channel = null;
+        try {
+            channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            connections.add(connection);
+        } catch (IOException e) {
+            log.warn("Scoring listener could not accept a connection", e);
+            closeQuietly(channel);
+        }
+    }
+
+    private boolean hasPendingOutput() {
+        for (Connection connection : connections) {
+            if (!connection.out.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Picks up work finished on other threads: queued responses, and room for paused connections
+    private void processReady() {
+        Connection connection;
+        while ((connection = ready.poll()) != null) {
+            if (connection.key.isValid()) {
+                connection.processFrames();
+                connection.updateInterest();
+            }
+        }
+        if (inFlight.get() < maxInFlight) {
+            for (Connection paused : new ArrayList<>(connections)) {
+                if (paused.paused && paused.key.isValid()) {
+                    paused.processFrames();
+                    paused.updateInterest();
+                }
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            if (closeable != null) {
+                closeable.close();
+            }
+        } catch (IOException e) {
+            // Nothing left to do with it
+        }
+    }
+
+    private final class Connection {
+
+        final SocketChannel channel;
+        SelectionKey key;
+        // In write mode between reads; always large enough for one whole frame
+        final ByteBuffer in = ByteBuffer.allocate(8 * ScoringFrameProtocol.MAX_FRAME_LENGTH);
+        final Queue<ByteBuffer> out = new ConcurrentLinkedQueue<>();
+        // Frames in out; ConcurrentLinkedQueue.size() walks the whole queue
+        final AtomicInteger queued = new AtomicInteger();
+        final AtomicInteger connectionInFlight = new AtomicInteger();
+        // Set by a worker once authentication succeeded
+        volatile String merchant;
+        volatile boolean authenticating;
+        volatile boolean closeAfterWrite;
+        // Selector thread only: frames are waiting for capacity
+        boolean paused;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() {
+            int read;
+            try {
+                read = channel.read(in);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (read < 0) {
+                close();
+                return;
+            }
+            processFrames();
+            updateInterest();
+        }
+
+        // Dispatches every complete frame in the buffer, as far as the limits allow
+        void processFrames() {
+            if (closeAfterWrite) {
+                return;
+            }
+            in.flip();
+            try {
+                paused = false;
+                int size;
+                while ((size = ScoringFrameProtocol.completeFrameSize(in)) > 0) {
+                    if (!hasCapacity()) {
+                        paused = true;
+                        break;
+                    }
+                    dispatch(in);
+                    in.position(in.position() + size);
+                }
+            } catch (IllegalArgumentException e) {
+                fail(e.getMessage());
+            } finally {
+                in.compact();
+            }
+        }
+
+        private boolean hasCapacity() {
+            return !authenticating
+                    && !draining
+                    && connectionInFlight.get() < maxInFlightPerConnection
+                    && queued.get() < maxInFlightPerConnection
+                    && inFlight.get() < maxInFlight;
+        }
+
+        private void dispatch(ByteBuffer frame) {
+            byte type = ScoringFrameProtocol.type(frame);
+            int correlationId = ScoringFrameProtocol.correlationId(frame);
+            int payload = ScoringFrameProtocol.payloadOffset(frame);
+            if (type == ScoringFrameProtocol.TYPE_AUTH && merchant == null) {
+                authenticate(frame, payload);
+            } else if (type == ScoringFrameProtocol.TYPE_SCORE && merchant != null) {
+                score(frame, payload, correlationId);
+            } else {
+                throw new IllegalArgumentException(merchant == null ? "Authenticate first!" : "Unexpected frame type " + type);
+            }
+        }
+
+        private void authenticate(ByteBuffer frame, int payload) {
+            int end = frame.position() + ScoringFrameProtocol.completeFrameSize(frame);
+            if (payload + Short.BYTES > end) {
+                throw new IllegalArgumentException("Malformed authentication frame!");
+            }
+            int userLength = frame.getShort(payload) & 0xFFFF;
+            int passwordAt = payload + Short.BYTES + userLength;
+            if (passwordAt + Short.BYTES > end) {
+                throw new IllegalArgumentException("Malformed authentication frame!");
+            }
+            int passwordLength = frame.getShort(passwordAt) & 0xFFFF;
+            if (passwordAt + Short.BYTES + passwordLength != end) {
+                throw new IllegalArgumentException("Malformed authentication frame!");
+            }
+            String username = new String(frame.array(), payload + Short.BYTES, userLength, StandardCharsets.UTF_8);
+            String password = new String(frame.array(), passwordAt + Short.BYTES, passwordLength, StandardCharsets.UTF_8);
+            // BCrypt is far too slow for the selector thread
+            authenticating = true;
+            workers.execute(() -> {
+                try {
+                    Authentication result = authenticationProvider.authenticate(
+                            UsernamePasswordAuthenticationToken.unauthenticated(username, password));
+                    boolean merchantRole = result != null && result.getAuthorities().stream()
+                            .anyMatch(authority -> MERCHANT_AUTHORITY.equals(authority.getAuthority()));
+                    if (merchantRole) {
+                        merchant = result.getName();
+                        respond(ScoringFrameProtocol.frame(ScoringFrameProtocol.TYPE_AUTH_OK, 0, 0).flip());
+                    } else {
+                        closeAfterWrite = true;
+                        respond(ScoringFrameProtocol.error(0, "Access denied!"));
+                    }
+                } catch (AuthenticationException e) {
+                    closeAfterWrite = true;
+                    respond(ScoringFrameProtocol.error(0, "Authentication failed!"));
+                } finally {
+                    authenticating = false;
+                    signal();
+                }
+            });
+        }
+
+        private void score(ByteBuffer frame, int payload, int correlationId) {
+            if (ScoringFrameProtocol.completeFrameSize(frame)
+                    != ScoringFrameProtocol.HEADER_SIZE + BinaryScoringProtocol.REQUEST_SIZE) {
+                throw new IllegalArgumentException("Score frame must hold one " + BinaryScoringProtocol.REQUEST_SIZE + " byte record!");
+            }
+            int error = BinaryScoringProtocol.validateRequest(frame, payload);
+            if (error != 0) {
+                ByteBuffer result = ScoringFrameProtocol.frame(ScoringFrameProtocol.TYPE_RESULT, correlationId,
+                        BinaryScoringProtocol.RESPONSE_SIZE);
+                BinaryScoringProtocol.encodeRejected(result, error);
+                respond(result.flip());
+                return;
+            }
+            BinaryTransactionRequest request = BinaryScoringProtocol.decodeRequest(frame, payload);
+            String merchantName = merchant;
+            inFlight.incrementAndGet();
+            connectionInFlight.incrementAndGet();
+            workers.execute(() -> {
+                try {
+                    ScoringOutcome outcome = transactionService.validateTransaction(request, merchantName);
+                    ByteBuffer result = ScoringFrameProtocol.frame(ScoringFrameProtocol.TYPE_RESULT, correlationId,
+                            BinaryScoringProtocol.RESPONSE_SIZE);
+                    BinaryScoringProtocol.encodeOutcome(result, outcome);
+                    respond(result.flip());
+                } catch (RuntimeException e) {
+                    log.warn("Scoring listener request failed", e);
+                    respond(ScoringFrameProtocol.error(correlationId, e.getMessage() == null ? "Scoring failed!" : e.getMessage()));
+                } finally {
+                    connectionInFlight.decrementAndGet();
+                    inFlight.decrementAndGet();
+                    signal();
+                }
+            });
+        }
+
+        // Connection-level protocol error: report it and close once it is written
+        private void fail(String message) {
+            closeAfterWrite = true;
+            in.position(in.limit());
+            respond(ScoringFrameProtocol.error(0, message));
+        }
+
+        private void respond(ByteBuffer frame) {
+            queued.incrementAndGet();
+            out.add(frame);
+        }
+
+        private void signal() {
+            ready.add(this);
+            selector.wakeup();
+        }
+
+        void write() {
+            if (!key.isValid()) {
+                return;
+            }
+            try {
+                ByteBuffer frame;
+                while ((frame = out.peek()) != null) {
+                    channel.write(frame);
+                    if (frame.hasRemaining()) {
+                        break;
+                    }
+                    out.poll();
+                    queued.decrementAndGet();
+                }
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (out.isEmpty() && closeAfterWrite && !authenticating) {
+                close();
+                return;
+            }
+            // Written responses may be what held the frames back; no worker signals that
+            if (paused) {
+                processFrames();
+            }
+            updateInterest();
+        }
+
+        void updateInterest() {
+            if (!key.isValid()) {
+                return;
+            }
+            int interest = 0;
+            if (!paused && !draining && !closeAfterWrite) {
+                interest |= SelectionKey.OP_READ;
+            }
+            if (!out.isEmpty()) {
+                interest |= SelectionKey.OP_WRITE;
+            } else if (closeAfterWrite && !authenticating) {
+                close();
+                return;
+            }
+            key.interestOps(interest);
+        }
+
+        void close() {
+            connections.remove(this);
+            key.cancel();
+            closeQuietly(channel);
+        }
+    }
+}
@@ -1,16 +1,25 @@
 package antifraud.controller;
 
+import antifraud.dto.BulkImportResponse;
 import antifraud.dto.CardRequest;
 import antifraud.dto.CardResponse;
 import antifraud.dto.DeleteStatusResponse;
 import antifraud.model.StolenCard;
 import antifraud.service.StolenCardService;
 import antifraud.util.ValidationUtil; // For path variable validation
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -21,11 +30,13 @@ public class StolenCardController {
 
     private final StolenCardService stolenCardService;
     private final ValidationUtil validationUtil;
+    private final ObjectWriter ndjsonWriter;
 
     @Autowired
-    public StolenCardController(StolenCardService stolenCardService, ValidationUtil validationUtil) {
+    public StolenCardController(StolenCardService stolenCardService, ValidationUtil validationUtil, ObjectMapper objectMapper) {
         this.stolenCardService = stolenCardService;
         this.validationUtil = validationUtil;
+        this.ndjsonWriter = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
     }
 
     @PostMapping
@@ -35,6 +46,15 @@ public class StolenCardController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Imports a feed of card numbers of any size, one per line as CSV (first column)
+     * or NDJSON ({"number": "..."}), and reports how many were accepted.
+     */
+    @PostMapping(value = "/bulk", consumes = {"text/csv", MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_PLAIN_VALUE})
+    public ResponseEntity<BulkImportResponse> importStolenCards(Reader body) throws IOException {
+        return ResponseEntity.ok(stolenCardService.importStolenCards(body));
+    }
+
     @DeleteMapping("/{number}")
     public ResponseEntity<DeleteStatusResponse> deleteStolenCard(@PathVariable String number) {
         if (!validationUtil.isValidLuhn(number)) {
@@ -53,4 +73,14 @@ public class StolenCardController {
                 .collect(Collectors.toList());
         return ResponseEntity.ok(response);
     }
+
+    /**
+     * Streams all stolen cards as newline delimited JSON, without building the full list.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamStolenCards(
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return NdjsonResponses.<CardResponse>stream(ndjsonWriter, acceptEncoding, consumer ->
+                stolenCardService.streamStolenCards(card -> consumer.accept(new CardResponse(card.getId(), card.getNumber()))));
+    }
 }
\ No newline at end of file
@@ -1,17 +1,26 @@
 package antifraud.controller;
 
+import antifraud.dto.BulkImportResponse;
 import antifraud.dto.DeleteStatusResponse; // DTO for delete response
 import antifraud.dto.IpRequest;
 import antifraud.dto.IpResponse;
 import antifraud.model.SuspiciousIp;
 import antifraud.service.SuspiciousIpService;
 import antifraud.util.ValidationUtil; // For path variable validation
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus; // For CREATED status
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -21,12 +30,14 @@ import java.util.stream.Collectors;
 public class SuspiciousIpController {
 
     private final SuspiciousIpService suspiciousIpService;
-    private final ValidationUtil validationUtil; /
+    private final ValidationUtil validationUtil;
+    private final ObjectWriter ndjsonWriter;
 
     @Autowired
-    public SuspiciousIpController(SuspiciousIpService suspiciousIpService, ValidationUtil validationUtil) {
+    public SuspiciousIpController(SuspiciousIpService suspiciousIpService, ValidationUtil validationUtil, ObjectMapper objectMapper) {
         this.suspiciousIpService = suspiciousIpService;
         this.validationUtil = validationUtil;
+        this.ndjsonWriter = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
     }
 
     @PostMapping
@@ -36,6 +47,15 @@ public class SuspiciousIpController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Imports a feed of addresses and CIDR blocks of any size, one per line as CSV
+     * (first column) or NDJSON ({"ip": "..."}), and reports how many were accepted.
+     */
+    @PostMapping(value = "/bulk", consumes = {"text/csv", MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_PLAIN_VALUE})
+    public ResponseEntity<BulkImportResponse> importSuspiciousIps(Reader body) throws IOException {
+        return ResponseEntity.ok(suspiciousIpService.importSuspiciousIps(body));
+    }
+
     @DeleteMapping("/{ip}")
     public ResponseEntity<DeleteStatusResponse> deleteSuspiciousIp(@PathVariable String ip) {
         if (!validationUtil.isValidIpV4(ip)) {
@@ -46,6 +66,18 @@ public class SuspiciousIpController {
         return ResponseEntity.ok(response);
     }
 
+    // CIDR blocks contain a slash, so the prefix length arrives as its own path segment
+    @DeleteMapping("/{ip}/{prefixLength}")
+    public ResponseEntity<DeleteStatusResponse> deleteSuspiciousIpBlock(@PathVariable String ip, @PathVariable String prefixLength) {
+        String block = ip + "/" + prefixLength;
+        if (!validationUtil.isValidIpV4Block(block)) {
+            throw new IllegalArgumentException("Invalid IPv4 CIDR format in path variable!");
+        }
+        Map<String, String> statusMap = suspiciousIpService.deleteSuspiciousIp(block);
+        DeleteStatusResponse response = new DeleteStatusResponse(statusMap.get("status"));
+        return ResponseEntity.ok(response);
+    }
+
     @GetMapping
     public ResponseEntity<List<IpResponse>> listSuspiciousIps() {
         List<SuspiciousIp> ips = suspiciousIpService.listSuspiciousIps();
@@ -54,4 +86,14 @@ public class SuspiciousIpController {
                 .collect(Collectors.toList());
         return ResponseEntity.ok(response);
     }
+
+    /**
+     * Streams all suspicious IPs as newline delimited JSON, without building the full list.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamSuspiciousIps(
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return NdjsonResponses.<IpResponse>stream(ndjsonWriter, acceptEncoding, consumer ->
+                suspiciousIpService.streamSuspiciousIps(ip -> consumer.accept(new IpResponse(ip.getId(), ip.getIp()))));
+    }
 }
\ No newline at end of file
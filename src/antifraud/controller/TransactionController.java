@@ -1,24 +1,49 @@
 package antifraud.controller;
 
+import antifraud.dto.BinaryScoringProtocol;
+import antifraud.dto.BinaryTransactionRequest;
+import antifraud.dto.FeedbackBatchItemResponse;
 import antifraud.dto.FeedbackRequest; // Import FeedbackRequest DTO
+import antifraud.dto.ScoringResponseBodies;
+import antifraud.dto.TransactionBatchItemResponse;
 import antifraud.dto.TransactionRequest;
-import antifraud.dto.TransactionResponse;
 import antifraud.dto.TransactionViewDTO; // Import DTO for responses
+import antifraud.dto.ValidatedTransactionRequest;
+import antifraud.exception.FeedbackConflictException;
+import antifraud.exception.TransactionNotFoundException;
+import antifraud.exception.UnprocessableFeedbackException;
+import antifraud.model.ScoringOutcome;
 import antifraud.model.Transaction; // Import Transaction entity
 import antifraud.model.TransactionValidationResult;
 import antifraud.service.TransactionService;
+import antifraud.util.Ipv4;
 import antifraud.util.ValidationUtil; // Import validation utility
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
 // Import Authentication and GrantedAuthority
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 // Other imports
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @RestController
@@ -27,29 +52,173 @@ public class TransactionController {
 
     private final TransactionService transactionService;
     private final ValidationUtil validationUtil;
+    private final Validator validator;
+    private final int maxBatchSize;
+    private final int maxHistoryPageSize;
+    private final int maxFeedbackBatchSize;
+    // One transaction per line, so never indented
+    private final ObjectWriter ndjsonWriter;
+    private static final MediaType BINARY_SCORING = MediaType.parseMediaType(BinaryScoringProtocol.MEDIA_TYPE);
+
+    // Serialized scoring responses, written as is
+    private final ScoringResponseBodies scoringResponses;
 
     @Autowired
-    public TransactionController(TransactionService transactionService, ValidationUtil validationUtil) {
+    public TransactionController(TransactionService transactionService, ValidationUtil validationUtil,
+                                 Validator validator, ObjectMapper objectMapper,
+                                 @Value("${antifraud.batch.max-size:1000}") int maxBatchSize,
+                                 @Value("${antifraud.history.max-page-size:1000}") int maxHistoryPageSize,
+                                 @Value("${antifraud.feedback.batch.max-size:10000}") int maxFeedbackBatchSize) {
         this.transactionService = transactionService;
         this.validationUtil = validationUtil;
+        this.validator = validator;
+        this.maxBatchSize = maxBatchSize;
+        this.maxHistoryPageSize = maxHistoryPageSize;
+        this.maxFeedbackBatchSize = maxFeedbackBatchSize;
+        this.ndjsonWriter = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        this.scoringResponses = new ScoringResponseBodies(objectMapper);
     }
 
     @PostMapping("/transaction")
-    public ResponseEntity<TransactionResponse> validateTransaction(@Valid @RequestBody TransactionRequest request) {
-        if (!validationUtil.isValidIpV4(request.getIp())) {
+    public ResponseEntity<byte[]> validateTransaction(@Valid @RequestBody TransactionRequest request,
+                                                                   Authentication authentication) {
+        long ipAddress = validationUtil.parseIpV4(request.getIp());
+        if (ipAddress == Ipv4.INVALID) {
             throw new IllegalArgumentException("Invalid IP address format!");
         }
-        if (!validationUtil.isValidLuhn(request.getNumber())) {
+        long cardKey = validationUtil.parseLuhn(request.getNumber());
+        if (cardKey == ValidationUtil.INVALID_CARD) {
             throw new IllegalArgumentException("Invalid card number format (Luhn check failed)!");
         }
 
-        Map<String, Object> validationDetails = transactionService.validateTransaction(request);
-        TransactionValidationResult resultEnum = (TransactionValidationResult) validationDetails.get("result");
-        String info = (String) validationDetails.get("info");
-        TransactionResponse response = new TransactionResponse(resultEnum.toString(), info);
+        // Limits are tuned per merchant, so scoring needs to know who submitted the transaction
+        ScoringOutcome outcome = transactionService.validateTransaction(
+                new ValidatedTransactionRequest(request, cardKey, ipAddress), authentication.getName());
+        // The same bytes Jackson would write for a TransactionResponse, without building or serializing one
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(scoringResponses.body(outcome));
+    }
+
+    /**
+     * The scoring endpoint for the binary protocol: one {@link BinaryScoringProtocol}
+     * record in, one response item out. Invalid records fail with 400 like JSON requests.
+     */
+    @PostMapping(value = "/transaction", consumes = BinaryScoringProtocol.MEDIA_TYPE)
+    public ResponseEntity<byte[]> validateBinaryTransaction(@RequestBody byte[] body, Authentication authentication) {
+        if (body.length != BinaryScoringProtocol.REQUEST_SIZE) {
+            throw new IllegalArgumentException("Binary request must be " + BinaryScoringProtocol.REQUEST_SIZE + " bytes!");
+        }
+        ByteBuffer in = ByteBuffer.wrap(body);
+        int error = BinaryScoringProtocol.validateRequest(in, 0);
+        if (error != 0) {
+            throw new IllegalArgumentException(BinaryScoringProtocol.errorMessage(error));
+        }
+        ScoringOutcome outcome = transactionService.validateTransaction(
+                BinaryScoringProtocol.decodeRequest(in, 0), authentication.getName());
+        ByteBuffer out = ByteBuffer.allocate(BinaryScoringProtocol.RESPONSE_SIZE);
+        BinaryScoringProtocol.encodeOutcome(out, outcome);
+        return ResponseEntity.ok().contentType(BINARY_SCORING).body(out.array());
+    }
+
+    /**
+     * Scores a batch of transactions. Invalid items get an error entry instead of
+     * failing the whole batch; results are returned in request order.
+     */
+    @PostMapping("/transactions/batch")
+    public ResponseEntity<List<TransactionBatchItemResponse>> validateTransactions(@RequestBody List<TransactionRequest> requests,
+                                                                                   Authentication authentication) {
+        if (requests == null || requests.isEmpty()) {
+            throw new IllegalArgumentException("Batch cannot be empty!");
+        }
+        if (requests.size() > maxBatchSize) {
+            throw new IllegalArgumentException("Batch cannot contain more than " + maxBatchSize + " transactions!");
+        }
+
+        // Same checks as the single endpoint, but reported per item
+        String[] errors = new String[requests.size()];
+        List<ValidatedTransactionRequest> validRequests = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            TransactionRequest request = requests.get(i);
+            errors[i] = validateBatchItem(request);
+            if (errors[i] != null) {
+                continue;
+            }
+            long ipAddress = validationUtil.parseIpV4(request.getIp());
+            long cardKey = validationUtil.parseLuhn(request.getNumber());
+            if (ipAddress == Ipv4.INVALID) {
+                errors[i] = "Invalid IP address format!";
+            } else if (cardKey == ValidationUtil.INVALID_CARD) {
+                errors[i] = "Invalid card number format (Luhn check failed)!";
+            } else {
+                validRequests.add(new ValidatedTransactionRequest(request, cardKey, ipAddress));
+            }
+        }
+
+        Iterator<Map<String, Object>> scored = transactionService.validateTransactions(validRequests, authentication.getName()).iterator();
+        List<TransactionBatchItemResponse> response = new ArrayList<>(requests.size());
+        for (String error : errors) {
+            if (error != null) {
+                response.add(new TransactionBatchItemResponse(null, null, error));
+                continue;
+            }
+            Map<String, Object> validationDetails = scored.next();
+            if (validationDetails.containsKey("error")) {
+                response.add(new TransactionBatchItemResponse(null, null, (String) validationDetails.get("error")));
+            } else {
+                TransactionValidationResult resultEnum = (TransactionValidationResult) validationDetails.get("result");
+                response.add(new TransactionBatchItemResponse(resultEnum.toString(), (String) validationDetails.get("info"), null));
+            }
+        }
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Batch scoring for the binary protocol: records back to back in, one response
+     * item per record out, in order. Invalid records get a rejected item.
+     */
+    @PostMapping(value = "/transactions/batch", consumes = BinaryScoringProtocol.MEDIA_TYPE)
+    public ResponseEntity<byte[]> validateBinaryTransactions(@RequestBody byte[] body, Authentication authentication) {
+        if (body.length == 0 || body.length % BinaryScoringProtocol.REQUEST_SIZE != 0) {
+            throw new IllegalArgumentException("Binary batch must be a non-empty multiple of "
+                    + BinaryScoringProtocol.REQUEST_SIZE + " bytes!");
+        }
+        int count = body.length / BinaryScoringProtocol.REQUEST_SIZE;
+        if (count > maxBatchSize) {
+            throw new IllegalArgumentException("Batch cannot contain more than " + maxBatchSize + " transactions!");
+        }
+
+        ByteBuffer in = ByteBuffer.wrap(body);
+        int[] errors = new int[count];
+        List<BinaryTransactionRequest> validRequests = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int offset = i * BinaryScoringProtocol.REQUEST_SIZE;
+            errors[i] = BinaryScoringProtocol.validateRequest(in, offset);
+            if (errors[i] == 0) {
+                validRequests.add(BinaryScoringProtocol.decodeRequest(in, offset));
+            }
+        }
+
+        Iterator<ScoringOutcome> scored = transactionService.validateBinaryTransactions(validRequests, authentication.getName()).iterator();
+        ByteBuffer out = ByteBuffer.allocate(count * BinaryScoringProtocol.RESPONSE_SIZE);
+        for (int error : errors) {
+            if (error != 0) {
+                BinaryScoringProtocol.encodeRejected(out, error);
+            } else {
+                BinaryScoringProtocol.encodeOutcome(out, scored.next());
+            }
+        }
+        return ResponseEntity.ok().contentType(BINARY_SCORING).body(out.array());
+    }
+
+    private String validateBatchItem(TransactionRequest request) {
+        if (request == null) {
+            return "Transaction cannot be null!";
+        }
+        Set<ConstraintViolation<TransactionRequest>> violations = validator.validate(request);
+        if (!violations.isEmpty()) {
+            return "Validation failed: " + violations.iterator().next().getMessage();
+        }
+        return null;
+    }
 
     @PutMapping("/transaction")
     public ResponseEntity<TransactionViewDTO> addTransactionFeedback(
@@ -74,15 +243,106 @@ public class TransactionController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Applies feedback to many transactions at once. Each item gets the status the
+     * single endpoint would have returned for it; results are returned in request order.
+     */
+    @PutMapping("/transactions/feedback")
+    public ResponseEntity<List<FeedbackBatchItemResponse>> addTransactionFeedbackBatch(@RequestBody List<FeedbackRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            throw new IllegalArgumentException("Batch cannot be empty!");
+        }
+        if (requests.size() > maxFeedbackBatchSize) {
+            throw new IllegalArgumentException("Batch cannot contain more than " + maxFeedbackBatchSize + " feedback items!");
+        }
+
+        String[] errors = new String[requests.size()];
+        List<FeedbackRequest> validRequests = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            FeedbackRequest request = requests.get(i);
+            if (request == null) {
+                errors[i] = "Feedback cannot be null!";
+                continue;
+            }
+            Set<ConstraintViolation<FeedbackRequest>> violations = validator.validate(request);
+            if (!violations.isEmpty()) {
+                errors[i] = "Validation failed: " + violations.iterator().next().getMessage();
+                continue;
+            }
+            validRequests.add(request);
+        }
+
+        Iterator<Map<String, Object>> applied = validRequests.isEmpty()
+                ? Collections.emptyIterator()
+                : transactionService.addFeedbackBatch(validRequests).iterator();
+        List<FeedbackBatchItemResponse> response = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            Long transactionId = requests.get(i) == null ? null : requests.get(i).getTransactionId();
+            if (errors[i] != null) {
+                response.add(new FeedbackBatchItemResponse(transactionId, HttpStatus.BAD_REQUEST.value(), errors[i]));
+                continue;
+            }
+            RuntimeException error = (RuntimeException) applied.next().get("error");
+            response.add(error == null
+                    ? new FeedbackBatchItemResponse(transactionId, HttpStatus.OK.value(), null)
+                    : new FeedbackBatchItemResponse(transactionId, statusOf(error).value(), error.getMessage()));
+        }
+        return ResponseEntity.ok(response);
+    }
+
+    // Same mapping as RestExceptionHandler
+    private static HttpStatus statusOf(RuntimeException error) {
+        if (error instanceof TransactionNotFoundException) {
+            return HttpStatus.NOT_FOUND;
+        }
+        if (error instanceof FeedbackConflictException) {
+            return HttpStatus.CONFLICT;
+        }
+        if (error instanceof UnprocessableFeedbackException) {
+            return HttpStatus.UNPROCESSABLE_ENTITY;
+        }
+        return HttpStatus.BAD_REQUEST;
+    }
+
+    /**
+     * Returns one page of up to {@code limit} transactions with an ID above {@code afterId};
+     * pass the last ID of a page as {@code afterId} to get the next one. Without parameters
+     * returns the first page of the largest size; {@code /history/stream} returns all of it.
+     */
     @GetMapping("/history")
-    public ResponseEntity<List<TransactionViewDTO>> getFullTransactionHistory() {
-        List<Transaction> history = transactionService.getTransactionHistory();
+    public ResponseEntity<List<TransactionViewDTO>> getFullTransactionHistory(@RequestParam(required = false) Long afterId,
+                                                                              @RequestParam(required = false) Integer limit) {
+        long from = afterId == null ? 0 : afterId;
+        int pageSize = limit == null ? maxHistoryPageSize : limit;
+        if (from < 0) {
+            throw new IllegalArgumentException("afterId cannot be negative!");
+        }
+        if (pageSize < 1 || pageSize > maxHistoryPageSize) {
+            throw new IllegalArgumentException("limit must be between 1 and " + maxHistoryPageSize + "!");
+        }
+        List<Transaction> history = transactionService.getTransactionHistoryPage(from, pageSize);
         List<TransactionViewDTO> response = history.stream()
                 .map(TransactionViewDTO::fromEntity)
                 .collect(Collectors.toList());
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Streams the history after {@code afterId} as newline delimited JSON, one transaction per line,
+     * gzip compressed when the client accepts it. Rows are written as they are read,
+     * so the size of the table doesn't matter.
+     */
+    @GetMapping(value = "/history/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamTransactionHistory(
+            @RequestParam(defaultValue = "0") long afterId,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        if (afterId < 0) {
+            throw new IllegalArgumentException("afterId cannot be negative!");
+        }
+        return NdjsonResponses.<TransactionViewDTO>stream(ndjsonWriter, acceptEncoding, consumer ->
+                transactionService.streamTransactionHistory(afterId, transaction -> consumer.accept(TransactionViewDTO.fromEntity(transaction))));
+    }
+
     @GetMapping("/history/{number}")
     public ResponseEntity<List<TransactionViewDTO>> getTransactionHistoryByNumber(@PathVariable String number) {
         if (!validationUtil.isValidLuhn(number)) {
@@ -0,0 +1,164 @@
+package antifraud.dto;
+
+import antifraud.model.FraudReason;
+import antifraud.model.Region;
+import antifraud.model.ScoringOutcome;
+import antifraud.model.TransactionValidationResult;
+import antifraud.util.CardNumbers;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-layout binary encoding of scoring requests and responses, accepted by
+ * {@code POST /api/antifraud/transaction} and {@code /transactions/batch} as
+ * {@value #MEDIA_TYPE}. This class is both the server's decoder and the reference
+ * codec for clients; it only depends on the model enums and {@link CardNumbers}.
+ * <p>
+ * A request is one {@value #REQUEST_SIZE} byte record per transaction, big-endian:
+ * <pre>
+ *  0  long  card number, as the unsigned value of its digits ({@link CardNumbers#encode})
+ *  8  long  date, as seconds since 1970-01-01T00:00:00 of the same local time the JSON date uses
+ * 16  long  amount
+ * 24  int   IPv4 address
+ * 28  byte  region ordinal ({@link Region})
+ * </pre>
+ * A batch is records back to back. The response holds {@value #RESPONSE_SIZE} bytes per
+ * transaction: the {@link TransactionValidationResult} ordinal and the {@link FraudReason}
+ * bit mask of "info". A batch item that failed validation has {@value #RESULT_REJECTED} as
+ * its result, followed by one of the {@code ERROR_*} codes.
+ * <p>
+ * Card numbers with a leading zero or more than 19 digits can't be encoded and must use JSON.
+ */
+public final class BinaryScoringProtocol {
+
+    public static final String MEDIA_TYPE = "application/vnd.antifraud.transaction";
+
+    public static final int REQUEST_SIZE = 29;
+    public static final int RESPONSE_SIZE = 2;
+
+    public static final int RESULT_REJECTED = 0xFF;
+
+    public static final int ERROR_INVALID_CARD = 1;
+    public static final int ERROR_INVALID_AMOUNT = 2;
+    public static final int ERROR_INVALID_REGION = 3;
+    public static final int ERROR_INVALID_DATE = 4;
+
+    private static final int CARD = 0;
+    private static final int EPOCH_SECOND = 8;
+    private static final int AMOUNT = 16;
+    private static final int IP = 24;
+    private static final int REGION = 28;
+
+    // Years 0000 to 9999, the range of the JSON date format
+    private static final long MIN_EPOCH_SECOND = -62_167_219_200L;
+    private static final long MAX_EPOCH_SECOND = 253_402_300_799L;
+
+    private static final Region[] REGIONS = Region.values();
+    private static final TransactionValidationResult[] RESULTS = TransactionValidationResult.values();
+
+    private BinaryScoringProtocol() {
+    }
+
+    // --- Client side ---
+
+    /**
+     * Appends one request record at the buffer's position.
+     *
+     * @param cardKey   the card number as returned by {@link CardNumbers#encode}
+     * @param ipAddress the address as returned by {@code Ipv4.parse}, cast to int
+     */
+    public static void encodeRequest(ByteBuffer out, long cardKey, int ipAddress, Region region,
+                                     long epochSecond, long amount) {
+        out.putLong(cardKey)
+                .putLong(epochSecond)
+                .putLong(amount)
+                .putInt(ipAddress)
+                .put((byte) region.ordinal());
+    }
+
+    /**
+     * Whether the response item at the buffer's position was rejected, without consuming it.
+     */
+    public static boolean isRejected(ByteBuffer in) {
+        return (in.get(in.position()) & 0xFF) == RESULT_REJECTED;
+    }
+
+    /**
+     * Reads one scored response item.
+     */
+    public static ScoringOutcome decodeOutcome(ByteBuffer in) {
+        int result = in.get() & 0xFF;
+        int mask = in.get() & 0xFF;
+        if (result >= RESULTS.length) {
+            throw new IllegalArgumentException("Not a scored response item: " + result);
+        }
+        return new ScoringOutcome(RESULTS[result], mask);
+    }
+
+    /**
+     * Reads one rejected response item.
+     *
+     * @return one of the {@code ERROR_*} codes
+     */
+    public static int decodeErrorCode(ByteBuffer in) {
+        in.get();
+        return in.get() & 0xFF;
+    }
+
+    // --- Server side ---
+
+    /**
+     * Checks the record starting at {@code offset} without allocating.
+     *
+     * @return 0 if it is valid, otherwise one of the {@code ERROR_*} codes
+     */
+    public static int validateRequest(ByteBuffer in, int offset) {
+        if (!CardNumbers.isLuhnValid(in.getLong(offset + CARD))) {
+            return ERROR_INVALID_CARD;
+        }
+        if (in.getLong(offset + AMOUNT) < 1) {
+            return ERROR_INVALID_AMOUNT;
+        }
+        if ((in.get(offset + REGION) & 0xFF) >= REGIONS.length) {
+            return ERROR_INVALID_REGION;
+        }
+        long epochSecond = in.getLong(offset + EPOCH_SECOND);
+        if (epochSecond < MIN_EPOCH_SECOND || epochSecond > MAX_EPOCH_SECOND) {
+            return ERROR_INVALID_DATE;
+        }
+        return 0;
+    }
+
+    /**
+     * Reads the record starting at {@code offset}, which must have passed {@link #validateRequest}.
+     */
+    public static BinaryTransactionRequest decodeRequest(ByteBuffer in, int offset) {
+        return new BinaryTransactionRequest(
+                in.getLong(offset + CARD),
+                Integer.toUnsignedLong(in.getInt(offset + IP)),
+                REGIONS[in.get(offset + REGION) & 0xFF],
+                in.getLong(offset + EPOCH_SECOND),
+                in.getLong(offset + AMOUNT));
+    }
+
+    public static void encodeOutcome(ByteBuffer out, ScoringOutcome outcome) {
+        out.put((byte) outcome.getResult().ordinal()).put((byte) outcome.getReasonMask());
+    }
+
+    public static void encodeRejected(ByteBuffer out, int errorCode) {
+        out.put((byte) RESULT_REJECTED).put((byte) errorCode);
+    }
+
+    /**
+     * The message the JSON endpoints use for the same problem.
+     */
+    public static String errorMessage(int errorCode) {
+        return switch (errorCode) {
+            case ERROR_INVALID_CARD -> "Invalid card number format (Luhn check failed)!";
+            case ERROR_INVALID_AMOUNT -> "Amount must be greater than 0";
+            case ERROR_INVALID_REGION -> "Invalid region code!";
+            case ERROR_INVALID_DATE -> "Invalid date format! Use format yyyy-MM-dd'T'HH:mm:ss";
+            default -> "Invalid transaction!";
+        };
+    }
+}
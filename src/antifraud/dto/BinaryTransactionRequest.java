@@ -0,0 +1,20 @@
+package antifraud.dto;
+
+import antifraud.model.Region;
+import lombok.Value;
+
+/**
+ * A transaction request decoded from the binary scoring protocol, see
+ * {@link BinaryScoringProtocol}. All fields were validated while decoding.
+ */
+@Value
+public class BinaryTransactionRequest {
+    // Card number encoded as by CardNumbers.encode
+    long cardKey;
+    // IPv4 address as an unsigned 32-bit value
+    long ipAddress;
+    Region region;
+    // Transaction date as seconds since 1970-01-01T00:00:00 UTC
+    long epochSecond;
+    long amount;
+}
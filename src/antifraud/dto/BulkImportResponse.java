@@ -0,0 +1,20 @@
+package antifraud.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Summary of a bulk blocklist import.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkImportResponse {
+    // New entries inserted
+    private long accepted;
+    // Entries already stored, or repeated within the feed
+    private long duplicates;
+    // Lines that failed validation
+    private long invalid;
+}
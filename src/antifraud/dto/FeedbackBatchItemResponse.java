@@ -0,0 +1,20 @@
+package antifraud.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One entry of the bulk feedback response. Status is the HTTP status the single
+ * feedback endpoint would have returned for the item; error is set unless it is 200.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class FeedbackBatchItemResponse {
+    private Long transactionId;
+    private int status;
+    private String error;
+}
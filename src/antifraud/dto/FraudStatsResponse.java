@@ -0,0 +1,40 @@
+package antifraud.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fraud statistics of the transactions dated within {@code [from, to)}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FraudStatsResponse {
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime from;
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime to;
+    private long transactions;
+    // Sum of the amounts of all transactions
+    private long amount;
+    // Result -> count
+    private Map<String, Long> results;
+    // Region -> result -> count
+    private Map<String, Map<String, Long>> regions;
+    // Amount range, e.g. "101-1000" -> result -> count
+    private Map<String, Map<String, Long>> amounts;
+    // Reason code -> count of transactions reporting it
+    private Map<String, Long> reasons;
+    // Result -> feedback that disagreed with it -> count
+    private Map<String, Map<String, Long>> feedback;
+    // The same statistics per step, when a step was requested
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<FraudStatsResponse> series;
+}
@@ -13,6 +13,7 @@ import lombok.NoArgsConstructor;
 public class IpRequest {
 
     @NotEmpty(message = "IP address cannot be empty")
+    // Either a single address or a CIDR block such as 10.0.0.0/8
     // Example optional pattern validation:
     // @Pattern(regexp = "^((25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)\\.){3}(25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)$", message = "Invalid IPv4 format")
     private String ip;
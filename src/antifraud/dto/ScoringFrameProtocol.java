@@ -0,0 +1,105 @@
+package antifraud.dto;
+
+import antifraud.model.Region;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Framing of the TCP scoring listener, which carries {@link BinaryScoringProtocol}
+ * records. Like that class, it doubles as the reference codec for clients.
+ * <p>
+ * Every frame is big-endian: {@code int length} (of everything after it),
+ * {@code byte type}, {@code int correlationId}, then the payload. A connection must
+ * start with one {@link #TYPE_AUTH} frame. After {@link #TYPE_AUTH_OK}, any number
+ * of {@link #TYPE_SCORE} frames may be sent without waiting. Each one is answered
+ * by a {@link #TYPE_RESULT} or {@link #TYPE_ERROR} frame carrying the same
+ * correlation ID, possibly out of order.
+ * <pre>
+ * AUTH    short length + UTF-8 username, short length + UTF-8 password
+ * AUTH_OK empty
+ * SCORE   one request record
+ * RESULT  one response item
+ * ERROR   UTF-8 message; after a connection-level error (correlation ID 0) the server closes the connection
+ * </pre>
+ */
+public final class ScoringFrameProtocol {
+
+    public static final byte TYPE_AUTH = 1;
+    public static final byte TYPE_AUTH_OK = 2;
+    public static final byte TYPE_SCORE = 3;
+    public static final byte TYPE_RESULT = 4;
+    public static final byte TYPE_ERROR = 5;
+
+    // length, type and correlation ID
+    public static final int HEADER_SIZE = 9;
+    // Largest accepted value of the length field; AUTH is the only frame that comes close
+    public static final int MAX_FRAME_LENGTH = 1024;
+
+    private ScoringFrameProtocol() {
+    }
+
+    /**
+     * Total size of the frame at the buffer's position, including the length field,
+     * or 0 if the buffer doesn't hold all of it yet.
+     *
+     * @throws IllegalArgumentException if the length field is out of range
+     */
+    public static int completeFrameSize(ByteBuffer in) {
+        if (in.remaining() < Integer.BYTES) {
+            return 0;
+        }
+        int length = in.getInt(in.position());
+        if (length < HEADER_SIZE - Integer.BYTES || length > MAX_FRAME_LENGTH) {
+            throw new IllegalArgumentException("Invalid frame length " + length);
+        }
+        int size = Integer.BYTES + length;
+        return in.remaining() >= size ? size : 0;
+    }
+
+    /**
+     * A frame ready to be written, with room for {@code payloadSize} bytes after the header.
+     * The payload must be put before the buffer is flipped.
+     */
+    public static ByteBuffer frame(byte type, int correlationId, int payloadSize) {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + payloadSize);
+        frame.putInt(HEADER_SIZE - Integer.BYTES + payloadSize).put(type).putInt(correlationId);
+        return frame;
+    }
+
+    public static ByteBuffer auth(String username, String password) {
+        byte[] user = username.getBytes(StandardCharsets.UTF_8);
+        byte[] pass = password.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = frame(TYPE_AUTH, 0, 2 * Short.BYTES + user.length + pass.length);
+        frame.putShort((short) user.length).put(user).putShort((short) pass.length).put(pass);
+        return frame.flip();
+    }
+
+    public static ByteBuffer score(int correlationId, long cardKey, int ipAddress, Region region,
+                                   long epochSecond, long amount) {
+        ByteBuffer frame = frame(TYPE_SCORE, correlationId, BinaryScoringProtocol.REQUEST_SIZE);
+        BinaryScoringProtocol.encodeRequest(frame, cardKey, ipAddress, region, epochSecond, amount);
+        return frame.flip();
+    }
+
+    public static ByteBuffer error(int correlationId, String message) {
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(text.length, MAX_FRAME_LENGTH - (HEADER_SIZE - Integer.BYTES));
+        return frame(TYPE_ERROR, correlationId, length).put(text, 0, length).flip();
+    }
+
+    public static byte type(ByteBuffer frame) {
+        return frame.get(frame.position() + Integer.BYTES);
+    }
+
+    public static int correlationId(ByteBuffer frame) {
+        return frame.getInt(frame.position() + Integer.BYTES + 1);
+    }
+
+    /**
+     * Position of the payload of the frame at the buffer's position.
+     */
+    public static int payloadOffset(ByteBuffer frame) {
+        return frame.position() + HEADER_SIZE;
+    }
+}
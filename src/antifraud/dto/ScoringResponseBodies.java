@@ -0,0 +1,45 @@
+package antifraud.dto;
+
+import antifraud.model.FraudReason;
+import antifraud.model.ScoringOutcome;
+import antifraud.model.TransactionValidationResult;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Every possible {@link TransactionResponse} body, serialized once up front.
+ * <p>
+ * A scoring response depends only on the result and the reason mask, so there
+ * are just 3 x 2^5 distinct bodies. The scoring endpoint writes the matching
+ * byte array as is, so no response object is built or serialized per request.
+ * The arrays are shared and must not be modified.
+ */
+public final class ScoringResponseBodies {
+
+    private static final int MASKS = 1 << FraudReason.values().length;
+
+    // Indexed by result ordinal * MASKS + reason mask
+    private final byte[][] bodies;
+
+    /**
+     * @param objectMapper the application's mapper, so bodies match what Jackson would have written
+     */
+    public ScoringResponseBodies(ObjectMapper objectMapper) {
+        TransactionValidationResult[] results = TransactionValidationResult.values();
+        bodies = new byte[results.length * MASKS][];
+        try {
+            for (TransactionValidationResult result : results) {
+                for (int mask = 0; mask < MASKS; mask++) {
+                    bodies[result.ordinal() * MASKS + mask] =
+                            objectMapper.writeValueAsBytes(new TransactionResponse(result.toString(), FraudReason.info(mask)));
+                }
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Scoring responses could not be serialized", e);
+        }
+    }
+
+    public byte[] body(ScoringOutcome outcome) {
+        return bodies[outcome.getResult().ordinal() * MASKS + outcome.getReasonMask()];
+    }
+}
@@ -0,0 +1,16 @@
+package antifraud.dto;
+
+import lombok.Value;
+
+/**
+ * A transaction request whose card number and IP already passed validation,
+ * together with the primitives parsed along the way, so scoring doesn't parse them again.
+ */
+@Value
+public class ValidatedTransactionRequest {
+    TransactionRequest request;
+    // Encoded card number, or CardNumbers.NOT_ENCODABLE
+    long cardKey;
+    // IPv4 address as an unsigned 32-bit value
+    long ipAddress;
+}
@@ -0,0 +1,7 @@
+package antifraud.exception;
+
+public class ScoringUnavailableException extends RuntimeException {
+    public ScoringUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -1,6 +1,7 @@
 package antifraud.handler;
 
 import antifraud.exception.FeedbackConflictException;
+import antifraud.exception.ScoringUnavailableException;
 import antifraud.exception.TransactionNotFoundException;
 import antifraud.exception.UnprocessableFeedbackException;
 // Other existing imports
@@ -88,6 +89,11 @@ public class RestExceptionHandler {
         return buildResponseEntity(HttpStatus.UNPROCESSABLE_ENTITY, ex.getMessage(), request.getRequestURI());
     }
 
+    @ExceptionHandler(ScoringUnavailableException.class)
+    public ResponseEntity<Object> handleScoringUnavailable(ScoringUnavailableException ex, HttpServletRequest request) {
+        return buildResponseEntity(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage(), request.getRequestURI());
+    }
+
     private ResponseEntity<Object> buildResponseEntity(HttpStatus status, String message, String path) {
         Map<String, Object> body = new HashMap<>();
         body.put("timestamp", LocalDateTime.now().toString());
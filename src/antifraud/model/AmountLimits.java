@@ -0,0 +1,61 @@
+package antifraud.model;
+
+import lombok.Value;
+
+/**
+ * Immutable snapshot of the adaptive amount limits.
+ * Amounts up to maxAllowed are ALLOWED, up to maxManual need MANUAL_PROCESSING,
+ * anything above is PROHIBITED. The version increases with every change.
+ */
+@Value
+public class AmountLimits {
+
+    public static final AmountLimits DEFAULT = new AmountLimits(200, 1500, 0);
+
+    // Weight of the feedback transaction's amount in the limit update formula
+    private static final double WEIGHT = 0.2;
+
+    long maxAllowed;
+    long maxManual;
+    long version;
+
+    /**
+     * Returns the limits after feedback that a transaction originally scored as
+     * {@code originalResult} should have been {@code feedbackResult}.
+     */
+    public AmountLimits adjust(long transactionAmount, TransactionValidationResult originalResult, TransactionValidationResult feedbackResult) {
+        double currentMaxAllowed = (double) maxAllowed;
+        double currentMaxManual = (double) maxManual;
+        double amount = (double) transactionAmount;
+        long newMaxAllowed = maxAllowed;
+        long newMaxManual = maxManual;
+
+        if (originalResult == TransactionValidationResult.ALLOWED) {
+            if (feedbackResult == TransactionValidationResult.MANUAL_PROCESSING) {
+                newMaxAllowed = (long) Math.ceil((1 - WEIGHT) * currentMaxAllowed - WEIGHT * amount);
+            } else { // PROHIBITED
+                newMaxAllowed = (long) Math.ceil((1 - WEIGHT) * currentMaxAllowed - WEIGHT * amount);
+                newMaxManual = (long) Math.ceil((1 - WEIGHT) * currentMaxManual - WEIGHT * amount);
+            }
+        } else if (originalResult == TransactionValidationResult.MANUAL_PROCESSING) {
+            if (feedbackResult == TransactionValidationResult.ALLOWED) {
+                newMaxAllowed = (long) Math.ceil((1 - WEIGHT) * currentMaxAllowed + WEIGHT * amount);
+            } else { // PROHIBITED
+                newMaxManual = (long) Math.ceil((1 - WEIGHT) * currentMaxManual - WEIGHT * amount);
+            }
+        } else { // PROHIBITED
+            if (feedbackResult == TransactionValidationResult.ALLOWED) {
+                newMaxAllowed = (long) Math.ceil((1 - WEIGHT) * currentMaxAllowed + WEIGHT * amount);
+                newMaxManual = (long) Math.ceil((1 - WEIGHT) * currentMaxManual + WEIGHT * amount);
+            } else { // MANUAL_PROCESSING
+                newMaxManual = (long) Math.ceil((1 - WEIGHT) * currentMaxManual + WEIGHT * amount);
+            }
+        }
+
+        if (newMaxAllowed <= 0) newMaxAllowed = 1;
+        if (newMaxManual <= newMaxAllowed) {
+            newMaxManual = newMaxAllowed + 1;
+        }
+        return new AmountLimits(newMaxAllowed, newMaxManual, version + 1);
+    }
+}
@@ -0,0 +1,62 @@
+package antifraud.model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Reasons reported in the "info" field of a scoring response.
+ * Each reason owns one bit, so a set of reasons is an int mask, and the
+ * sorted, comma separated info string of every mask is built once up front.
+ */
+public enum FraudReason {
+    AMOUNT("amount"),
+    CARD_NUMBER("card-number"),
+    IP("ip"),
+    IP_CORRELATION("ip-correlation"),
+    REGION_CORRELATION("region-correlation");
+
+    // Info string per mask; the empty mask is what an ALLOWED result reports
+    private static final String[] INFO = buildInfo();
+
+    private final String code;
+
+    FraudReason(String code) {
+        this.code = code;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public int bit() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * @param mask bits of the reasons to report
+     * @return the reasons' codes in alphabetical order joined with ", ", or "none" for an empty mask
+     */
+    public static String info(int mask) {
+        return INFO[mask];
+    }
+
+    private static String[] buildInfo() {
+        FraudReason[] reasons = values();
+        List<FraudReason> sorted = new ArrayList<>(List.of(reasons));
+        sorted.sort(Comparator.comparing(FraudReason::getCode));
+        String[] info = new String[1 << reasons.length];
+        info[0] = "none";
+        for (int mask = 1; mask < info.length; mask++) {
+            StringBuilder sb = new StringBuilder();
+            for (FraudReason reason : sorted) {
+                if ((mask & reason.bit()) != 0) {
+                    if (sb.length() > 0) sb.append(", ");
+                    sb.append(reason.code);
+                }
+            }
+            info[mask] = sb.toString();
+        }
+        return info;
+    }
+}
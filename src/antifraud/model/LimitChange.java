@@ -0,0 +1,64 @@
+package antifraud.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Journal entry recording a merchant's amount limits after a feedback-driven change.
+ * For each merchant, the entry with the highest version holds the current limits.
+ * A version is journaled once per merchant, so of two concurrent changes only one commits.
+ */
+@Entity
+@Table(name = "limit_journal", uniqueConstraints =
+        @UniqueConstraint(name = "uk_limit_journal_merchant_version", columnNames = {"merchant", "version"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LimitChange {
+
+    // Merchant key of the default profile; NULLs never collide in the unique key, so it can't be null
+    public static final String DEFAULT_PROFILE = "";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Merchant whose limits changed; DEFAULT_PROFILE for the default profile.
+    // Null in journals written before the default profile had a key
+    @Column(nullable = true)
+    private String merchant;
+
+    @Column(nullable = false)
+    private long version;
+
+    @Column(nullable = false)
+    private long maxAllowed;
+
+    @Column(nullable = false)
+    private long maxManual;
+
+    @Column(nullable = false)
+    private LocalDateTime changedAt;
+
+    // Transaction whose feedback caused the change
+    @Column(nullable = true)
+    private Long transactionId;
+
+    // A null merchant stands for the default profile
+    public LimitChange(String merchant, AmountLimits limits, Long transactionId) {
+        this.merchant = merchant == null ? DEFAULT_PROFILE : merchant;
+        this.version = limits.getVersion();
+        this.maxAllowed = limits.getMaxAllowed();
+        this.maxManual = limits.getMaxManual();
+        this.changedAt = LocalDateTime.now();
+        this.transactionId = transactionId;
+    }
+
+    public AmountLimits toLimits() {
+        return new AmountLimits(maxAllowed, maxManual, version);
+    }
+}
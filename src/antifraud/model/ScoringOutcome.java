@@ -0,0 +1,18 @@
+package antifraud.model;
+
+import lombok.Value;
+
+/**
+ * Result of scoring one transaction: the final result and the reasons reported for it.
+ */
+@Value
+public class ScoringOutcome {
+
+    TransactionValidationResult result;
+    // Bits of the FraudReasons reported in "info"
+    int reasonMask;
+
+    public String getInfo() {
+        return FraudReason.info(reasonMask);
+    }
+}
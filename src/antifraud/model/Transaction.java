@@ -10,14 +10,22 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime; // Use LocalDateTime for database storage
 
 @Entity
-@Table(name = "transactions")
+// (number, date) serves the correlation queries, which look up one card's last hour;
+// date serves the archiver and the startup rebuilds, which read by date range
+@Table(name = "transactions", indexes = {
+        @Index(name = "idx_transactions_number_date", columnList = "number, date"),
+        @Index(name = "idx_transactions_date", columnList = "date")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Transaction {
 
+    // Sequence-based IDs (pooled-lo, see application.properties) let Hibernate batch inserts;
+    // IDENTITY would force one insert statement per row
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transactions_seq")
+    @SequenceGenerator(name = "transactions_seq", sequenceName = "transactions_seq", allocationSize = 50)
     private Long transactionId;
 
     @NotNull
@@ -51,6 +59,11 @@ public class Transaction {
     @Column(nullable = true)
     private String feedback;
 
+    // Username of the merchant that submitted the transaction; null for transactions
+    // recorded before limits were kept per merchant
+    @Column(nullable = true)
+    private String merchant;
+
 
     public Transaction(Long amount, String ip, String number, Region region, LocalDateTime date, TransactionValidationResult result) {
         this.amount = amount;
@@ -0,0 +1,59 @@
+package antifraud.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Plain JDBC access to the blocklist tables for bulk imports: one lookup of
+ * already stored entries and one batched insert per chunk of the feed.
+ */
+@Repository
+public class BlocklistJdbcWriter {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    @Autowired
+    public BlocklistJdbcWriter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    public Set<String> findExistingStolenCards(Collection<String> numbers) {
+        return findExisting("SELECT number FROM stolen_cards WHERE number IN (:values)", numbers);
+    }
+
+    public void insertStolenCards(List<String> numbers) {
+        insert("INSERT INTO stolen_cards (number) VALUES (?)", numbers);
+    }
+
+    public Set<String> findExistingSuspiciousIps(Collection<String> ips) {
+        return findExisting("SELECT ip FROM suspicious_ips WHERE ip IN (:values)", ips);
+    }
+
+    public void insertSuspiciousIps(List<String> ips) {
+        insert("INSERT INTO suspicious_ips (ip) VALUES (?)", ips);
+    }
+
+    private Set<String> findExisting(String sql, Collection<String> values) {
+        if (values.isEmpty()) {
+            return Set.of();
+        }
+        return new HashSet<>(namedJdbcTemplate.queryForList(sql, Map.of("values", values), String.class));
+    }
+
+    private void insert(String sql, List<String> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(sql, values, values.size(), (ps, value) -> ps.setString(1, value));
+    }
+}
@@ -0,0 +1,12 @@
+package antifraud.repository;
+
+/**
+ * Projection of {@link TransactionRepository#countCorrelations}: how many other IPs
+ * and regions a card used within the correlation window.
+ */
+public interface CorrelationCounts {
+
+    long getDistinctIps();
+
+    long getDistinctRegions();
+}
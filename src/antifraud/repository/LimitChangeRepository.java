@@ -0,0 +1,25 @@
+package antifraud.repository;
+
+import antifraud.model.LimitChange;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface LimitChangeRepository extends JpaRepository<LimitChange, Long> {
+
+    // Latest journal entry of the default profile, stored under LimitChange.DEFAULT_PROFILE or, in older journals, NULL
+    Optional<LimitChange> findTopByMerchantOrMerchantIsNullOrderByVersionDescIdDesc(String defaultProfile);
+
+    // Latest journal entry of one merchant
+    Optional<LimitChange> findTopByMerchantOrderByVersionDescIdDesc(String merchant);
+
+    // Latest journal entries of every merchant with its own profile
+    // (several rows per merchant only in journals written before versions were unique)
+    @Query("SELECT l FROM LimitChange l WHERE l.merchant IS NOT NULL AND l.merchant <> '' AND l.version = "
+            + "(SELECT MAX(m.version) FROM LimitChange m WHERE m.merchant = l.merchant)")
+    List<LimitChange> findLatestPerMerchant();
+}
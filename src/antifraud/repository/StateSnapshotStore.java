@@ -0,0 +1,140 @@
+package antifraud.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot file of the in-memory fraud state, made of named sections.
+ * <p>
+ * The file is read once when the application starts, so components can restore
+ * their section during initialization instead of rebuilding from the database.
+ * It is written to a temporary file and moved into place, so a crash while
+ * writing leaves the previous snapshot intact. A trailing CRC32 guards against
+ * truncated or corrupted files, which are ignored.
+ */
+@Repository
+public class StateSnapshotStore {
+
+    private static final Logger log = LoggerFactory.getLogger(StateSnapshotStore.class);
+
+    private static final int MAGIC = 0x41465353; // "AFSS"
+    private static final int FORMAT_VERSION = 2;
+
+    private final boolean enabled;
+    private final Path file;
+    private final Map<String, byte[]> loaded;
+
+    @Autowired
+    public StateSnapshotStore(@Value("${antifraud.snapshot.enabled:false}") boolean enabled,
+                              @Value("${antifraud.snapshot.file:../state.snapshot}") String file) {
+        this.enabled = enabled;
+        this.file = Paths.get(file);
+        this.loaded = enabled ? load() : Map.of();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The named section of the snapshot found at startup, if there was one.
+     */
+    public Optional<DataInputStream> section(String name) {
+        byte[] bytes = loaded.get(name);
+        return bytes == null ? Optional.empty() : Optional.of(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    /**
+     * Atomically replaces the snapshot file with the given sections.
+     */
+    public void write(Map<String, byte[]> sections) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(sections.size());
+            for (Map.Entry<String, byte[]> section : sections.entrySet()) {
+                out.writeUTF(section.getKey());
+                out.writeInt(section.getValue().length);
+                out.write(section.getValue());
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeLong(crc.getValue());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                channel.write(ByteBuffer.wrap(bytes.toByteArray()));
+                channel.force(true);
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the state snapshot " + file, e);
+        }
+    }
+
+    private Map<String, byte[]> load() {
+        if (!Files.exists(file)) {
+            return Map.of();
+        }
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            if (bytes.length < Long.BYTES) {
+                throw new IOException("file too short");
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length - Long.BYTES);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            in.skipNBytes(bytes.length - Long.BYTES);
+            if (in.readLong() != crc.getValue()) {
+                throw new IOException("checksum mismatch");
+            }
+            in = new DataInputStream(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - Long.BYTES)));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("unknown format");
+            }
+            int count = in.readInt();
+            Map<String, byte[]> sections = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                byte[] section = new byte[in.readInt()];
+                in.readFully(section);
+                sections.put(name, section);
+            }
+            log.info("State snapshot {} loaded with sections {}", file, sections.keySet());
+            return sections;
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable state snapshot {}: {}", file, e.getMessage());
+            return Map.of();
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package antifraud.repository;
 
 import antifraud.model.StolenCard;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface StolenCardRepository extends JpaRepository<StolenCard, Long> {
@@ -18,4 +23,23 @@ public interface StolenCardRepository extends JpaRepository<StolenCard, Long> {
 
     // Check if a card number exists
     boolean existsByNumber(String number);
-}
\ No newline at end of file
+
+    // Highest ID in use, 0 if empty; recorded in the state snapshot
+    @Query("SELECT COALESCE(MAX(e.id), 0) FROM StolenCard e")
+    long findMaxId();
+
+    // Rows up to a snapshot's highest ID; fewer than at snapshot time means some were deleted since
+    long countByIdLessThanEqual(long id);
+
+    // Cards added after a snapshot was taken
+    List<StolenCard> findByIdGreaterThan(long id);
+
+    // All cards in ID order for the streaming export; same fetch size and read-only hints as the history stream.
+    // Must be called inside a transaction and the stream closed after use
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + TransactionRepository.STREAM_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select e from StolenCard e order by e.id asc")
+    Stream<StolenCard> streamAllByOrderByIdAsc();
+}
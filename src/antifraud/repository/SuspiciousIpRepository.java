@@ -1,11 +1,16 @@
 package antifraud.repository;
 
 import antifraud.model.SuspiciousIp;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface SuspiciousIpRepository extends JpaRepository<SuspiciousIp, Long> {
@@ -18,4 +23,23 @@ public interface SuspiciousIpRepository extends JpaRepository<SuspiciousIp, Long
 
     // Check if an IP exists (alternative to findByIp().isPresent())
     boolean existsByIp(String ip);
-}
\ No newline at end of file
+
+    // Highest ID in use, 0 if empty; recorded in the state snapshot
+    @Query("SELECT COALESCE(MAX(e.id), 0) FROM SuspiciousIp e")
+    long findMaxId();
+
+    // Rows up to a snapshot's highest ID; fewer than at snapshot time means some were deleted since
+    long countByIdLessThanEqual(long id);
+
+    // IPs added after a snapshot was taken
+    List<SuspiciousIp> findByIdGreaterThan(long id);
+
+    // All IPs in ID order for the streaming export; same fetch size and read-only hints as the history stream.
+    // Must be called inside a transaction and the stream closed after use
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + TransactionRepository.STREAM_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select e from SuspiciousIp e order by e.id asc")
+    Stream<SuspiciousIp> streamAllByOrderByIdAsc();
+}
@@ -0,0 +1,251 @@
+package antifraud.repository;
+
+import antifraud.model.Region;
+import antifraud.model.Transaction;
+import antifraud.model.TransactionValidationResult;
+import antifraud.util.LongBloomFilter;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Read-only archive of transactions moved out of the {@code transactions} table,
+ * see {@code TransactionArchiver}. Each archive run writes segment files of one day
+ * of transaction dates each, named {@code transactions-<day>-<first ID>.archive}.
+ * <p>
+ * A segment starts with an uncompressed header: the day, the ID range, the record
+ * count and a bloom filter of the card numbers it holds. The gzip compressed records
+ * follow. Headers are read once at startup, so a lookup by card number only
+ * decompresses the segments whose filter may contain the card.
+ * <p>
+ * Segments are written to a temporary file and moved into place, and a segment
+ * written again for the same first ID replaces the old one, so a run that failed
+ * after writing is simply repeated. The file and the directory entry are forced to
+ * disk before {@link #write} returns, since the archived rows are deleted right after.
+ */
+@Repository
+public class TransactionArchive {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionArchive.class);
+
+    private static final int MAGIC = 0x41465441; // "AFTA"
+    private static final int FORMAT_VERSION = 1;
+    private static final String SUFFIX = ".archive";
+    private static final double BLOOM_FALSE_POSITIVE_RATE = 0.01;
+
+    private static final Region[] REGIONS = Region.values();
+    private static final TransactionValidationResult[] RESULTS = TransactionValidationResult.values();
+
+    private final boolean enabled;
+    private final Path directory;
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    public TransactionArchive(@Value("${antifraud.archive.enabled:false}") boolean enabled,
+                              @Value("${antifraud.archive.directory:../archive}") String directory,
+                              @Value("${antifraud.persistence.journal.enabled:false}") boolean journalEnabled) {
+        if (enabled && journalEnabled) {
+            throw new IllegalStateException("Archival works on the transactions table and can't be combined with the journal!");
+        }
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PostConstruct
+    public void open() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "transactions-*" + SUFFIX)) {
+                for (Path file : files) {
+                    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                        segments.add(readHeader(file, in));
+                    } catch (IOException e) {
+                        log.warn("Ignoring unreadable archive segment {}", file, e);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the transaction archive in " + directory, e);
+        }
+        log.info("Transaction archive opened: {} segments", segments.size());
+    }
+
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Writes one segment holding {@code transactions}, which must all be dated on {@code day}
+     * and be in ID order.
+     */
+    public void write(LocalDate day, List<Transaction> transactions) throws IOException {
+        long firstId = transactions.get(0).getTransactionId();
+        long lastId = transactions.get(transactions.size() - 1).getTransactionId();
+        LongBloomFilter cards = new LongBloomFilter(transactions.size(), BLOOM_FALSE_POSITIVE_RATE);
+        for (Transaction transaction : transactions) {
+            cards.put(cardKey(transaction.getNumber()));
+        }
+        Path file = directory.resolve(String.format("transactions-%s-%019d%s", day, firstId, SUFFIX));
+        Path temp = directory.resolve(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream raw = new BufferedOutputStream(Channels.newOutputStream(channel));
+            DataOutputStream header = new DataOutputStream(raw);
+            header.writeInt(MAGIC);
+            header.writeInt(FORMAT_VERSION);
+            header.writeLong(day.toEpochDay());
+            header.writeLong(firstId);
+            header.writeLong(lastId);
+            header.writeInt(transactions.size());
+            cards.writeTo(header);
+            header.flush();
+            GZIPOutputStream gzip = new GZIPOutputStream(raw, 8192);
+            DataOutputStream out = new DataOutputStream(gzip);
+            for (Transaction transaction : transactions) {
+                writeRecord(out, transaction);
+            }
+            out.flush();
+            gzip.finish();
+            raw.flush();
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+        Segment segment = new Segment(file, transactions.size(), cards);
+        segments.removeIf(existing -> existing.file.equals(file));
+        segments.add(segment);
+    }
+
+    // Makes the rename durable. Not every platform can open a directory; there the move has to do
+    private void forceDirectory() throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (UnsupportedOperationException | AccessDeniedException e) {
+            log.debug("Could not force the archive directory {} to disk", directory, e);
+        }
+    }
+
+    /**
+     * All archived transactions of the card, in no particular order.
+     */
+    public List<Transaction> findByNumber(String number) {
+        List<Transaction> found = new ArrayList<>();
+        long key = cardKey(number);
+        for (Segment segment : segments) {
+            if (!segment.cards.mightContain(key)) {
+                continue;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment.file)))) {
+                readHeader(segment.file, in);
+                DataInputStream records = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in, 8192)));
+                for (int i = 0; i < segment.count; i++) {
+                    Transaction transaction = readRecord(records);
+                    if (transaction.getNumber().equals(number)) {
+                        found.add(transaction);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read archive segment " + segment.file, e);
+            }
+        }
+        return found;
+    }
+
+    private static Segment readHeader(Path file, DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Not an archive segment of this version");
+        }
+        // Day and ID range, for tooling
+        in.readLong();
+        in.readLong();
+        in.readLong();
+        int count = in.readInt();
+        LongBloomFilter cards = LongBloomFilter.readFrom(in);
+        return new Segment(file, count, cards);
+    }
+
+    private static void writeRecord(DataOutputStream out, Transaction transaction) throws IOException {
+        out.writeLong(transaction.getTransactionId());
+        out.writeLong(transaction.getAmount());
+        out.writeUTF(transaction.getIp());
+        out.writeUTF(transaction.getNumber());
+        out.writeByte(transaction.getRegion().ordinal());
+        out.writeLong(transaction.getDate().toEpochSecond(ZoneOffset.UTC));
+        out.writeByte(transaction.getResult().ordinal());
+        out.writeUTF(transaction.getFeedback() == null ? "" : transaction.getFeedback());
+        out.writeBoolean(transaction.getMerchant() != null);
+        if (transaction.getMerchant() != null) {
+            out.writeUTF(transaction.getMerchant());
+        }
+    }
+
+    private static Transaction readRecord(DataInputStream in) throws IOException {
+        Transaction transaction = new Transaction();
+        transaction.setTransactionId(in.readLong());
+        transaction.setAmount(in.readLong());
+        transaction.setIp(in.readUTF());
+        transaction.setNumber(in.readUTF());
+        transaction.setRegion(REGIONS[in.readByte()]);
+        transaction.setDate(LocalDateTime.ofEpochSecond(in.readLong(), 0, ZoneOffset.UTC));
+        transaction.setResult(RESULTS[in.readByte()]);
+        transaction.setFeedback(in.readUTF());
+        transaction.setMerchant(in.readBoolean() ? in.readUTF() : null);
+        return transaction;
+    }
+
+    // Bloom filter key of a card number; any stable 64-bit hash will do
+    private static long cardKey(String number) {
+        long key = 0;
+        for (int i = 0; i < number.length(); i++) {
+            key = key * 31 + number.charAt(i);
+        }
+        return key;
+    }
+
+    private static final class Segment {
+        final Path file;
+        final int count;
+        final LongBloomFilter cards;
+
+        Segment(Path file, int count, LongBloomFilter cards) {
+            this.file = file;
+            this.count = count;
+            this.cards = cards;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package antifraud.repository;
+
+import antifraud.model.Transaction;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Plain JDBC access to the transactions table for the write-behind path:
+ * batched inserts of transactions whose IDs were assigned up front.
+ */
+@Repository
+public class TransactionJdbcWriter {
+
+    // Must match the allocationSize of transactions_seq on the Transaction entity
+    static final int ID_BLOCK_SIZE = 50;
+
+    private static final String INSERT_SQL = "INSERT INTO transactions "
+            + "(transaction_id, amount, ip, number, region, date, result, feedback, merchant) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Next ID to hand out and the end (exclusive) of the current block
+    private long nextId;
+    private long blockEnd;
+    // Guards nextId/blockEnd. A lock rather than synchronized: the sequence query runs while it's held
+    private final ReentrantLock lock = new ReentrantLock();
+
+    @Autowired
+    public TransactionJdbcWriter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Hands out an ID from transactions_seq. Like Hibernate's pooled-lo optimizer,
+     * each sequence value is the low end of a block of {@value #ID_BLOCK_SIZE} IDs,
+     * so IDs never collide with the ones Hibernate generates.
+     */
+    public long allocateId() {
+        lock.lock();
+        try {
+            if (nextId == blockEnd) {
+                Long low = jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR transactions_seq", Long.class);
+                nextId = low;
+                blockEnd = low + ID_BLOCK_SIZE;
+            }
+            return nextId++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void insertAll(List<Transaction> transactions) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, transactions, transactions.size(), (ps, transaction) -> {
+            ps.setLong(1, transaction.getTransactionId());
+            ps.setLong(2, transaction.getAmount());
+            ps.setString(3, transaction.getIp());
+            ps.setString(4, transaction.getNumber());
+            ps.setString(5, transaction.getRegion().name());
+            ps.setObject(6, transaction.getDate());
+            ps.setString(7, transaction.getResult().name());
+            ps.setString(8, transaction.getFeedback());
+            ps.setString(9, transaction.getMerchant());
+        });
+    }
+}
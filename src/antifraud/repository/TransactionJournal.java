@@ -0,0 +1,506 @@
+package antifraud.repository;
+
+import antifraud.model.Region;
+import antifraud.model.Transaction;
+import antifraud.model.TransactionValidationResult;
+import antifraud.util.CardNumbers;
+import antifraud.util.Ipv4;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Optional storage engine for scored transactions: an append-only journal of
+ * fixed-width binary records in memory-mapped segment files, with an in-memory
+ * index serving the lookups {@link TransactionRepository} serves otherwise
+ * (by ID, by card number, and the full history in ID order).
+ * <p>
+ * Every record is {@value #RECORD_SIZE} bytes. A transaction record holds the card as a
+ * {@code long} ({@link CardNumbers}), the IP as an {@code int}, the region ordinal,
+ * the date as epoch seconds (UTC), the amount, the result and the merchant. Feedback is
+ * appended as its own record, so nothing is ever rewritten. Card numbers that don't fit
+ * a {@code long}, IPs whose text isn't canonical and merchant names are kept in a small
+ * append-only string dictionary next to the segments.
+ * <p>
+ * A segment is rolled over when full. On startup the segments are replayed to rebuild
+ * the index. Writes reach the OS page cache immediately, so they survive a process
+ * crash; segments are forced to disk when rolled over and on shutdown.
+ * <p>
+ * The journal starts empty; transactions already in the database are not migrated.
+ */
+@Repository
+public class TransactionJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionJournal.class);
+
+    static final int RECORD_SIZE = 48;
+
+    // Record layout
+    private static final int TYPE = 0;
+    private static final int FLAGS = 1;
+    private static final int REGION = 2;
+    private static final int RESULT = 3;
+    private static final int FEEDBACK = 4;
+    private static final int ID = 8;
+    private static final int CARD = 16;
+    private static final int EPOCH_SECOND = 24;
+    private static final int AMOUNT = 32;
+    private static final int IP = 40;
+    private static final int MERCHANT = 44;
+
+    // A zero type byte marks the unwritten rest of a segment
+    private static final byte TYPE_TRANSACTION = 1;
+    private static final byte TYPE_FEEDBACK = 2;
+    private static final byte FLAG_CARD_IN_DICTIONARY = 1;
+    private static final byte FLAG_IP_IN_DICTIONARY = 2;
+    private static final int NO_MERCHANT = -1;
+    // Feedback is stored as the result's ordinal + 1
+    private static final byte NO_FEEDBACK = 0;
+
+    private static final TransactionValidationResult[] RESULTS = TransactionValidationResult.values();
+    private static final Region[] REGIONS = Region.values();
+
+    // Transactions decoded per read lock when iterating the whole journal
+    private static final int CHUNK_SIZE = 500;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int configuredSegmentSize;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Everything below is guarded by lock
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final List<String> dictionary = new ArrayList<>();
+    private final Map<String, Integer> dictionaryIds = new HashMap<>();
+    private final Map<String, IdList> idsByNumber = new HashMap<>();
+    private int recordsPerSegment;
+    private long recordCount;
+    // Indexed by transaction ID - 1; IDs are handed out sequentially from 1
+    private long[] recordOfId = new long[1024];
+    private byte[] feedbackOfId = new byte[1024];
+    // Transactions whose feedback is being applied, but not written yet
+    private final Set<Long> feedbackReserved = new HashSet<>();
+    private int transactionCount;
+
+    @Autowired
+    public TransactionJournal(@Value("${antifraud.persistence.journal.enabled:false}") boolean enabled,
+                              @Value("${antifraud.persistence.journal.directory:../journal}") String directory,
+                              @Value("${antifraud.persistence.journal.segment-size:67108864}") int segmentSize,
+                              @Value("${antifraud.persistence.write-behind.enabled:false}") boolean writeBehindEnabled,
+                              @Value("${antifraud.velocity.source:memory}") String velocitySource) {
+        if (enabled && writeBehindEnabled) {
+            throw new IllegalStateException("The transaction journal and write-behind persistence can't both be enabled!");
+        }
+        if (enabled && "database".equals(velocitySource)) {
+            throw new IllegalStateException("antifraud.velocity.source=database needs transactions in the database, not the journal!");
+        }
+        if (segmentSize < RECORD_SIZE) {
+            throw new IllegalArgumentException("Journal segment size must hold at least one record!");
+        }
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.configuredSegmentSize = segmentSize;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long lastTransactionId() {
+        lock.readLock().lock();
+        try {
+            return transactionCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Maps the existing segments and rebuilds the index from them.
+     */
+    @PostConstruct
+    public void open() {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            Files.createDirectories(directory);
+            Path dictionaryFile = directory.resolve("strings.dict");
+            if (Files.exists(dictionaryFile)) {
+                for (String value : Files.readAllLines(dictionaryFile, StandardCharsets.UTF_8)) {
+                    dictionaryIds.put(value, dictionary.size());
+                    dictionary.add(value);
+                }
+            }
+            // Existing segments keep the size they were created with
+            Path first = segmentPath(0);
+            int segmentSize = Files.exists(first) ? (int) Files.size(first) : configuredSegmentSize;
+            recordsPerSegment = segmentSize / RECORD_SIZE;
+            for (int segment = 0; Files.exists(segmentPath(segment)); segment++) {
+                segments.add(map(segment));
+            }
+            replay();
+            log.info("Transaction journal opened: {} transactions in {} segments", transactionCount, segments.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the transaction journal in " + directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Appends the transaction and assigns its ID.
+     */
+    public Transaction save(Transaction transaction) {
+        lock.writeLock().lock();
+        try {
+            append(transaction);
+            return transaction;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<Transaction> saveAll(List<Transaction> transactions) {
+        lock.writeLock().lock();
+        try {
+            for (Transaction transaction : transactions) {
+                append(transaction);
+            }
+            return transactions;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reserves the feedback of a transaction, unless it already has some or another
+     * reservation. The holder then writes it with {@link #saveFeedback} once the rest of
+     * its work succeeded, or gives it up with {@link #releaseFeedback}.
+     *
+     * @return false if the transaction doesn't exist, already has feedback or is reserved
+     */
+    public boolean reserveFeedback(long transactionId) {
+        lock.writeLock().lock();
+        try {
+            return exists(transactionId) && feedbackOfId[(int) transactionId - 1] == NO_FEEDBACK
+                    && feedbackReserved.add(transactionId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Records the feedback for a transaction reserved with {@link #reserveFeedback}.
+     */
+    public void saveFeedback(long transactionId, TransactionValidationResult feedback) {
+        lock.writeLock().lock();
+        try {
+            if (!feedbackReserved.remove(transactionId)) {
+                throw new IllegalStateException("Feedback for transaction " + transactionId + " wasn't reserved!");
+            }
+            MappedByteBuffer buffer = nextSlot();
+            int offset = offsetOf(recordCount);
+            buffer.put(offset + FEEDBACK, (byte) (feedback.ordinal() + 1));
+            buffer.putLong(offset + ID, transactionId);
+            buffer.put(offset + TYPE, TYPE_FEEDBACK);
+            recordCount++;
+            feedbackOfId[(int) transactionId - 1] = (byte) (feedback.ordinal() + 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gives up a reservation that wasn't written; does nothing if it was.
+     */
+    public void releaseFeedback(long transactionId) {
+        lock.writeLock().lock();
+        try {
+            feedbackReserved.remove(transactionId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Optional<Transaction> findById(long transactionId) {
+        lock.readLock().lock();
+        try {
+            return exists(transactionId) ? Optional.of(decode((int) transactionId)) : Optional.empty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Transaction> findByNumberOrderByTransactionIdAsc(String number) {
+        lock.readLock().lock();
+        try {
+            IdList ids = idsByNumber.get(number);
+            if (ids == null) {
+                return List.of();
+            }
+            List<Transaction> transactions = new ArrayList<>(ids.size);
+            for (int i = 0; i < ids.size; i++) {
+                transactions.add(decode(ids.ids[i]));
+            }
+            return transactions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Transaction> findAllByOrderByTransactionIdAsc() {
+        lock.readLock().lock();
+        try {
+            List<Transaction> transactions = new ArrayList<>(transactionCount);
+            for (int id = 1; id <= transactionCount; id++) {
+                transactions.add(decode(id));
+            }
+            return transactions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Transaction> findByTransactionIdGreaterThanOrderByTransactionIdAsc(long afterId, int limit) {
+        lock.readLock().lock();
+        try {
+            long from = Math.max(afterId, 0) + 1;
+            long to = Math.min(transactionCount, from + limit - 1);
+            List<Transaction> transactions = new ArrayList<>((int) Math.max(0, to - from + 1));
+            for (long id = from; id <= to; id++) {
+                transactions.add(decode((int) id));
+            }
+            return transactions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Passes every transaction after {@code afterId} to {@code consumer}, in ID order.
+     * The read lock is only held while decoding a chunk, never while the consumer runs.
+     */
+    public void forEachAfter(long afterId, Consumer<Transaction> consumer) {
+        long next = Math.max(afterId, 0) + 1;
+        while (true) {
+            List<Transaction> chunk = findByTransactionIdGreaterThanOrderByTransactionIdAsc(next - 1, CHUNK_SIZE);
+            if (chunk.isEmpty()) {
+                return;
+            }
+            chunk.forEach(consumer);
+            next += chunk.size();
+        }
+    }
+
+    private boolean exists(long transactionId) {
+        return transactionId >= 1 && transactionId <= transactionCount;
+    }
+
+    private void append(Transaction transaction) {
+        int id = transactionCount + 1;
+        byte flags = 0;
+        long card = CardNumbers.encode(transaction.getNumber());
+        if (card == CardNumbers.NOT_ENCODABLE) {
+            card = dictionaryId(transaction.getNumber());
+            flags |= FLAG_CARD_IN_DICTIONARY;
+        }
+        long address = Ipv4.parse(transaction.getIp());
+        int ip;
+        if (address == Ipv4.INVALID || !Ipv4.format((int) address).equals(transaction.getIp())) {
+            ip = dictionaryId(transaction.getIp());
+            flags |= FLAG_IP_IN_DICTIONARY;
+        } else {
+            ip = (int) address;
+        }
+        int merchant = transaction.getMerchant() == null ? NO_MERCHANT : dictionaryId(transaction.getMerchant());
+        byte feedback = feedbackByte(transaction.getFeedback());
+
+        MappedByteBuffer buffer = nextSlot();
+        int offset = offsetOf(recordCount);
+        buffer.put(offset + FLAGS, flags);
+        buffer.put(offset + REGION, (byte) transaction.getRegion().ordinal());
+        buffer.put(offset + RESULT, (byte) transaction.getResult().ordinal());
+        buffer.put(offset + FEEDBACK, feedback);
+        buffer.putLong(offset + ID, id);
+        buffer.putLong(offset + CARD, card);
+        buffer.putLong(offset + EPOCH_SECOND, transaction.getDate().toEpochSecond(ZoneOffset.UTC));
+        buffer.putLong(offset + AMOUNT, transaction.getAmount());
+        buffer.putInt(offset + IP, ip);
+        buffer.putInt(offset + MERCHANT, merchant);
+        // Written last, so a record is only seen once it is complete
+        buffer.put(offset + TYPE, TYPE_TRANSACTION);
+        index(id, recordCount, transaction.getNumber(), feedback);
+        recordCount++;
+        transaction.setTransactionId((long) id);
+    }
+
+    // The segment the next record goes to, rolling over to a new one when the current one is full
+    private MappedByteBuffer nextSlot() {
+        int segment = (int) (recordCount / recordsPerSegment);
+        if (segment == segments.size()) {
+            try {
+                if (!segments.isEmpty()) {
+                    segments.get(segments.size() - 1).force();
+                }
+                segments.add(map(segment));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not create journal segment " + segment, e);
+            }
+        }
+        return segments.get(segment);
+    }
+
+    private void replay() {
+        recordCount = 0;
+        for (MappedByteBuffer buffer : segments) {
+            for (int record = 0; record < recordsPerSegment; record++, recordCount++) {
+                int offset = record * RECORD_SIZE;
+                byte type = buffer.get(offset + TYPE);
+                if (type == TYPE_TRANSACTION) {
+                    int id = (int) buffer.getLong(offset + ID);
+                    index(id, recordCount, numberAt(buffer, offset), buffer.get(offset + FEEDBACK));
+                } else if (type == TYPE_FEEDBACK) {
+                    feedbackOfId[(int) buffer.getLong(offset + ID) - 1] = buffer.get(offset + FEEDBACK);
+                } else {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void index(int id, long record, String number, byte feedback) {
+        if (id > recordOfId.length) {
+            int capacity = Math.max(id, recordOfId.length * 2);
+            recordOfId = Arrays.copyOf(recordOfId, capacity);
+            feedbackOfId = Arrays.copyOf(feedbackOfId, capacity);
+        }
+        recordOfId[id - 1] = record;
+        feedbackOfId[id - 1] = feedback;
+        transactionCount = Math.max(transactionCount, id);
+        idsByNumber.computeIfAbsent(number, key -> new IdList()).add(id);
+    }
+
+    private Transaction decode(int id) {
+        long record = recordOfId[id - 1];
+        MappedByteBuffer buffer = segments.get((int) (record / recordsPerSegment));
+        int offset = offsetOf(record);
+        byte flags = buffer.get(offset + FLAGS);
+        int ip = buffer.getInt(offset + IP);
+        int merchant = buffer.getInt(offset + MERCHANT);
+        byte feedback = feedbackOfId[id - 1];
+        Transaction transaction = new Transaction(
+                buffer.getLong(offset + AMOUNT),
+                (flags & FLAG_IP_IN_DICTIONARY) != 0 ? dictionary.get(ip) : Ipv4.format(ip),
+                numberAt(buffer, offset),
+                REGIONS[buffer.get(offset + REGION)],
+                LocalDateTime.ofEpochSecond(buffer.getLong(offset + EPOCH_SECOND), 0, ZoneOffset.UTC),
+                RESULTS[buffer.get(offset + RESULT)]);
+        transaction.setTransactionId((long) id);
+        transaction.setFeedback(feedback == NO_FEEDBACK ? "" : RESULTS[feedback - 1].name());
+        transaction.setMerchant(merchant == NO_MERCHANT ? null : dictionary.get(merchant));
+        return transaction;
+    }
+
+    private String numberAt(MappedByteBuffer buffer, int offset) {
+        long card = buffer.getLong(offset + CARD);
+        return (buffer.get(offset + FLAGS) & FLAG_CARD_IN_DICTIONARY) != 0
+                ? dictionary.get((int) card)
+                : CardNumbers.decode(card);
+    }
+
+    private int offsetOf(long record) {
+        return (int) (record % recordsPerSegment) * RECORD_SIZE;
+    }
+
+    private static byte feedbackByte(String feedback) {
+        if (feedback == null || feedback.isEmpty()) {
+            return NO_FEEDBACK;
+        }
+        return (byte) (TransactionValidationResult.valueOf(feedback).ordinal() + 1);
+    }
+
+    // Written to the dictionary file before any record refers to it
+    private int dictionaryId(String value) {
+        Integer id = dictionaryIds.get(value);
+        if (id != null) {
+            return id;
+        }
+        if (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Line breaks can't be stored in the transaction journal!");
+        }
+        try {
+            Files.writeString(directory.resolve("strings.dict"), value + "\n", StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the journal dictionary", e);
+        }
+        id = dictionary.size();
+        dictionary.add(value);
+        dictionaryIds.put(value, id);
+        return id;
+    }
+
+    private MappedByteBuffer map(int segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) recordsPerSegment * RECORD_SIZE);
+        }
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format("transactions-%06d.seg", segment));
+    }
+
+    // Growable list of transaction IDs, in ascending order as they are appended
+    private static final class IdList {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+}
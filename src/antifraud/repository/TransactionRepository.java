@@ -1,16 +1,29 @@
 package antifraud.repository;
 
+import antifraud.model.Region;
 import antifraud.model.Transaction;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional; // Keep Optional if findById is used
+import java.util.stream.Stream;
 
 @Repository
 public interface TransactionRepository extends JpaRepository<Transaction, Long> {
 
+    // Rows fetched per JDBC round trip when streaming the history
+    int STREAM_FETCH_SIZE = 500;
+
     /**
      * Finds all transactions for a given card number that occurred between
      * the specified start and end times (exclusive of end time, inclusive of start time).
@@ -18,6 +31,54 @@ public interface TransactionRepository extends JpaRepository<Transaction, Long>
      */
     List<Transaction> findByNumberAndDateBetween(String number, LocalDateTime startDateTime, LocalDateTime endDateTime);
 
+    /**
+     * Counts the distinct IPs other than {@code ip} and the distinct regions other than {@code region}
+     * a card used between the given times (both inclusive), in one row without loading any entities.
+     * Used for the correlation checks when they are served from the database.
+     */
+    @Query("select count(distinct case when t.ip <> :ip then t.ip end) as distinctIps, "
+            + "count(distinct case when t.region <> :region then t.region end) as distinctRegions "
+            + "from Transaction t where t.number = :number and t.date between :startDateTime and :endDateTime")
+    CorrelationCounts countCorrelations(@Param("number") String number,
+                                        @Param("startDateTime") LocalDateTime startDateTime,
+                                        @Param("endDateTime") LocalDateTime endDateTime,
+                                        @Param("ip") String ip,
+                                        @Param("region") Region region);
+
+    /**
+     * Finds the transaction with the most recent date.
+     * Used to anchor the velocity index rebuild on startup.
+     */
+    Optional<Transaction> findTopByOrderByDateDesc();
+
+    /**
+     * Finds all transactions dated at or after the given time, oldest first.
+     * Used to rebuild the velocity index on startup.
+     */
+    List<Transaction> findByDateGreaterThanEqualOrderByDateAsc(LocalDateTime startDateTime);
+
+    /**
+     * One page of the transactions dated at or after the given time, keyset paginated
+     * on the transaction ID. Used to rebuild the statistics rollups on startup.
+     */
+    List<Transaction> findByDateGreaterThanEqualAndTransactionIdGreaterThanOrderByTransactionIdAsc(
+            LocalDateTime startDateTime, long afterId, Limit limit);
+
+    /**
+     * Finds the transaction with the oldest date.
+     * Used by the archiver to find the next day to archive.
+     */
+    Optional<Transaction> findTopByOrderByDateAsc();
+
+    /**
+     * Locks and returns up to {@code limit} transactions dated within {@code [from, to)},
+     * in ID order, so feedback can't change them while they are being archived.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<Transaction> findByDateGreaterThanEqualAndDateLessThanOrderByTransactionIdAsc(LocalDateTime from,
+                                                                                       LocalDateTime to,
+                                                                                       Limit limit);
+
 
     /**
      * Finds all transaction history for a given card number, ordered by transaction ID ascending.
@@ -37,5 +98,35 @@ public interface TransactionRepository extends JpaRepository<Transaction, Long>
      */
     List<Transaction> findAllByOrderByTransactionIdAsc();
 
+    /**
+     * Highest transaction ID in use, 0 if there are none.
+     * Recorded in the state snapshot, so a restart only replays newer transactions.
+     */
+    @Query("select coalesce(max(t.transactionId), 0) from Transaction t")
+    long findMaxTransactionId();
+
+    /**
+     * Finds one page of transaction history after the given ID, ordered by transaction ID ascending.
+     * Used for the keyset paginated GET /api/antifraud/history?afterId=&limit= endpoint.
+     *
+     * @param afterId The last transaction ID of the previous page, 0 for the first page.
+     * @param limit   The maximum number of transactions to return.
+     * @return Up to {@code limit} transactions with an ID above {@code afterId}, sorted by ID.
+     */
+    List<Transaction> findByTransactionIdGreaterThanOrderByTransactionIdAsc(long afterId, Limit limit);
+
+    /**
+     * Streams all transactions after the given ID, ordered by transaction ID ascending,
+     * fetching {@value #STREAM_FETCH_SIZE} rows per round trip.
+     * Used for the GET /api/antifraud/history/stream endpoint.
+     * Must be called inside a transaction and the stream closed after use.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select t from Transaction t where t.transactionId > :afterId order by t.transactionId asc")
+    Stream<Transaction> streamByTransactionIdGreaterThan(@Param("afterId") long afterId);
+
     // JpaRepository already provides findById(Long id) which returns Optional<Transaction>
 }
\ No newline at end of file
@@ -0,0 +1,208 @@
+package antifraud.service;
+
+import antifraud.exception.FeedbackConflictException;
+import antifraud.model.AmountLimits;
+import antifraud.model.LimitChange;
+import antifraud.model.Transaction;
+import antifraud.model.TransactionValidationResult;
+import antifraud.repository.LimitChangeRepository;
+import antifraud.util.TransactionCallbacks;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BinaryOperator;
+
+/**
+ * Holds the adaptive amount limits of every merchant.
+ * <p>
+ * Each merchant has its own profile, tuned only by feedback on that merchant's
+ * transactions. Merchants without feedback yet use the default profile.
+ * Profiles live in a concurrent map, so merchants don't contend with each other.
+ * <p>
+ * Scoring reads an immutable {@link AmountLimits} snapshot without locking.
+ * Feedback journals the next version of the limits to the database, so they survive
+ * restarts, and swaps it in once the feedback commits. The journal accepts each
+ * merchant's version once, so it decides between changes racing on several instances;
+ * on one instance, feedback for the same profile waits until the previous one completed.
+ * Other instances pick up newer journal entries on their next refresh.
+ * <p>
+ * The current limits of every profile are exported as the {@code antifraud.limits.max.allowed}
+ * and {@code antifraud.limits.max.manual} gauges, tagged with the merchant ("default" for the default profile).
+ */
+@Service
+public class AmountLimitService {
+
+    // Prefer whichever snapshot has the higher version
+    private static final BinaryOperator<AmountLimits> NEWER =
+            (local, latest) -> latest.getVersion() > local.getVersion() ? latest : local;
+
+    private final LimitChangeRepository limitChangeRepository;
+    private final MeterRegistry meterRegistry;
+    private final AtomicReference<AmountLimits> defaultProfile;
+    private final ConcurrentHashMap<String, AtomicReference<AmountLimits>> merchantProfiles = new ConcurrentHashMap<>();
+    // Held from computing a profile's next version until the feedback transaction completes
+    private final ReentrantLock defaultJournalLock = new ReentrantLock();
+    private final ConcurrentHashMap<String, ReentrantLock> merchantJournalLocks = new ConcurrentHashMap<>();
+
+    @Autowired
+    public AmountLimitService(LimitChangeRepository limitChangeRepository,
+                              MeterRegistry meterRegistry,
+                              @Value("${antifraud.limits.default.max-allowed:200}") long defaultMaxAllowed,
+                              @Value("${antifraud.limits.default.max-manual:1500}") long defaultMaxManual) {
+        this.limitChangeRepository = limitChangeRepository;
+        this.meterRegistry = meterRegistry;
+        this.defaultProfile = newProfile("default", new AmountLimits(defaultMaxAllowed, defaultMaxManual, 0));
+    }
+
+    /**
+     * Current limits for the merchant, or the default profile if it has none of its own.
+     */
+    public AmountLimits current(String merchant) {
+        if (merchant != null) {
+            AtomicReference<AmountLimits> profile = merchantProfiles.get(keyOf(merchant));
+            if (profile != null) {
+                return profile.get();
+            }
+        }
+        return defaultProfile.get();
+    }
+
+    /**
+     * Applies feedback to the merchant's limits and journals the result. Must be
+     * called inside the transaction that stores the feedback; scoring sees the new
+     * limits once it commits. Feedback on transactions without a merchant tunes the
+     * default profile.
+     *
+     * @throws FeedbackConflictException if another instance journaled the same version first
+     */
+    public AmountLimits applyFeedback(String merchant, long amount, TransactionValidationResult originalResult,
+                                      TransactionValidationResult feedbackResult, Long transactionId) {
+        String key = merchant == null ? null : keyOf(merchant);
+        lockUntilCompletion(key);
+        AtomicReference<AmountLimits> profile = profileOf(key);
+        AmountLimits updated = latest(key, profile).adjust(amount, originalResult, feedbackResult);
+        journal(List.of(new LimitChange(key, updated, transactionId)));
+        TransactionCallbacks.afterCommit(() -> profile.accumulateAndGet(updated, NEWER));
+        return updated;
+    }
+
+    /**
+     * Applies the feedback of many transactions in one pass, in list order. Each
+     * profile is swapped once with the result of applying all of its transactions
+     * in turn, and journaled once with its final limits. Must be called inside the
+     * transaction that stores the feedback.
+     *
+     * @param labelled transactions whose feedback field holds the new label
+     * @throws FeedbackConflictException if another instance journaled one of the versions first
+     */
+    public void applyFeedbackBatch(List<Transaction> labelled) {
+        Map<String, List<Transaction>> byProfile = new LinkedHashMap<>();
+        for (Transaction transaction : labelled) {
+            String key = transaction.getMerchant() == null ? null : keyOf(transaction.getMerchant());
+            byProfile.computeIfAbsent(key, k -> new ArrayList<>()).add(transaction);
+        }
+        // Locked in one order, so batches touching the same profiles can't deadlock
+        List<String> keys = new ArrayList<>(byProfile.keySet());
+        keys.sort(Comparator.nullsFirst(Comparator.naturalOrder()));
+        keys.forEach(this::lockUntilCompletion);
+
+        List<LimitChange> changes = new ArrayList<>(byProfile.size());
+        List<Runnable> swaps = new ArrayList<>(byProfile.size());
+        for (Map.Entry<String, List<Transaction>> entry : byProfile.entrySet()) {
+            String key = entry.getKey();
+            List<Transaction> transactions = entry.getValue();
+            AtomicReference<AmountLimits> profile = profileOf(key);
+            AmountLimits limits = latest(key, profile);
+            for (Transaction transaction : transactions) {
+                limits = limits.adjust(transaction.getAmount(), transaction.getResult(),
+                        TransactionValidationResult.valueOf(transaction.getFeedback()));
+            }
+            AmountLimits updated = limits;
+            changes.add(new LimitChange(key, updated, transactions.get(transactions.size() - 1).getTransactionId()));
+            swaps.add(() -> profile.accumulateAndGet(updated, NEWER));
+        }
+        journal(changes);
+        TransactionCallbacks.afterCommit(() -> swaps.forEach(Runnable::run));
+    }
+
+    private AtomicReference<AmountLimits> profileOf(String key) {
+        return key == null
+                ? defaultProfile
+                // A merchant's first feedback starts from the default profile
+                : merchantProfiles.computeIfAbsent(key, k -> newProfile(k, defaultProfile.get()));
+    }
+
+    // Released when the transaction completes, so the next change on this instance starts from the committed version
+    private void lockUntilCompletion(String key) {
+        ReentrantLock lock = key == null
+                ? defaultJournalLock
+                : merchantJournalLocks.computeIfAbsent(key, k -> new ReentrantLock());
+        lock.lock();
+        TransactionCallbacks.afterCompletion(lock::unlock);
+    }
+
+    // Another instance may have journaled a newer version that the last refresh hasn't picked up
+    private AmountLimits latest(String key, AtomicReference<AmountLimits> profile) {
+        Optional<LimitChange> journaled = key == null
+                ? limitChangeRepository.findTopByMerchantOrMerchantIsNullOrderByVersionDescIdDesc(LimitChange.DEFAULT_PROFILE)
+                : limitChangeRepository.findTopByMerchantOrderByVersionDescIdDesc(key);
+        AmountLimits local = profile.get();
+        return journaled.map(latest -> NEWER.apply(local, latest.toLimits())).orElse(local);
+    }
+
+    // The unique (merchant, version) key turns a lost race into a constraint violation
+    private void journal(List<LimitChange> changes) {
+        try {
+            limitChangeRepository.saveAllAndFlush(changes);
+        } catch (DataIntegrityViolationException e) {
+            throw new FeedbackConflictException("Limits were changed concurrently, try again!");
+        }
+    }
+
+    /**
+     * Adopts journaled limits that are newer than the ones in memory.
+     */
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${antifraud.limits.refresh-interval-ms:5000}")
+    public void refresh() {
+        limitChangeRepository.findTopByMerchantOrMerchantIsNullOrderByVersionDescIdDesc(LimitChange.DEFAULT_PROFILE)
+                .ifPresent(latest -> defaultProfile.accumulateAndGet(latest.toLimits(), NEWER));
+        for (LimitChange latest : limitChangeRepository.findLatestPerMerchant()) {
+            merchantProfiles.computeIfAbsent(latest.getMerchant(), k -> newProfile(k, latest.toLimits()))
+                    .accumulateAndGet(latest.toLimits(), NEWER);
+        }
+    }
+
+    private AtomicReference<AmountLimits> newProfile(String merchant, AmountLimits limits) {
+        AtomicReference<AmountLimits> profile = new AtomicReference<>(limits);
+        Gauge.builder("antifraud.limits.max.allowed", profile, p -> p.get().getMaxAllowed())
+                .description("Largest amount scored ALLOWED")
+                .tag("merchant", merchant)
+                .register(meterRegistry);
+        Gauge.builder("antifraud.limits.max.manual", profile, p -> p.get().getMaxManual())
+                .description("Largest amount scored MANUAL_PROCESSING")
+                .tag("merchant", merchant)
+                .register(meterRegistry);
+        return profile;
+    }
+
+    private static String keyOf(String merchant) {
+        return merchant.toLowerCase(Locale.ROOT);
+    }
+}
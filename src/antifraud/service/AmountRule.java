@@ -0,0 +1,45 @@
+package antifraud.service;
+
+import antifraud.model.AmountLimits;
+import antifraud.model.FraudReason;
+import antifraud.model.TransactionValidationResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Checks the amount against the merchant's current adaptive limits.
+ */
+@Component
+public class AmountRule implements FraudRule {
+
+    private final AmountLimitService amountLimitService;
+
+    @Autowired
+    public AmountRule(AmountLimitService amountLimitService) {
+        this.amountLimitService = amountLimitService;
+    }
+
+    @Override
+    public FraudReason reason() {
+        return FraudReason.AMOUNT;
+    }
+
+    @Override
+    public int cost() {
+        return COST_ARITHMETIC;
+    }
+
+    @Override
+    public ScoringStage stage() {
+        return ScoringStage.DECISION;
+    }
+
+    @Override
+    public TransactionValidationResult evaluate(ScoringContext context) {
+        // One consistent snapshot of the merchant's limits
+        AmountLimits limits = amountLimitService.current(context.merchant);
+        if (context.amount > limits.getMaxManual()) return TransactionValidationResult.PROHIBITED;
+        if (context.amount > limits.getMaxAllowed()) return TransactionValidationResult.MANUAL_PROCESSING;
+        return TransactionValidationResult.ALLOWED;
+    }
+}
@@ -0,0 +1,81 @@
+package antifraud.service;
+
+import antifraud.dto.BulkImportResponse;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Bookkeeping for one bulk blocklist import. Entries that passed validation and
+ * in-feed de-duplication are collected in chunks; each chunk costs one lookup of
+ * the entries already stored and one batched insert of the rest.
+ */
+final class BlocklistImport {
+
+    private final int batchSize;
+    private final Function<Collection<String>, Set<String>> findExisting;
+    private final Consumer<List<String>> insert;
+    private final Consumer<String> onInserted;
+    private final List<String> chunk;
+    private long accepted;
+    private long duplicates;
+    private long invalid;
+
+    /**
+     * @param onInserted called with every entry that was inserted, e.g. to update an in-memory index after commit
+     */
+    BlocklistImport(int batchSize, Function<Collection<String>, Set<String>> findExisting,
+                    Consumer<List<String>> insert, Consumer<String> onInserted) {
+        this.batchSize = batchSize;
+        this.findExisting = findExisting;
+        this.insert = insert;
+        this.onInserted = onInserted;
+        this.chunk = new ArrayList<>(batchSize);
+    }
+
+    void invalid() {
+        invalid++;
+    }
+
+    void duplicate() {
+        duplicates++;
+    }
+
+    /**
+     * @param entry a valid entry in the canonical form it is stored in, not seen earlier in the feed
+     */
+    void add(String entry) {
+        chunk.add(entry);
+        if (chunk.size() == batchSize) {
+            flush();
+        }
+    }
+
+    BulkImportResponse finish() {
+        flush();
+        return new BulkImportResponse(accepted, duplicates, invalid);
+    }
+
+    private void flush() {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        Set<String> existing = findExisting.apply(chunk);
+        List<String> toInsert = new ArrayList<>(chunk.size() - existing.size());
+        for (String entry : chunk) {
+            if (existing.contains(entry)) {
+                duplicates++;
+            } else {
+                toInsert.add(entry);
+            }
+        }
+        insert.accept(toInsert);
+        toInsert.forEach(onInserted);
+        accepted += toInsert.size();
+        chunk.clear();
+    }
+}
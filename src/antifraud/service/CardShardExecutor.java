@@ -0,0 +1,202 @@
+package antifraud.service;
+
+import antifraud.exception.ScoringUnavailableException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Optional card-sharded executor for scoring.
+ * <p>
+ * When enabled, each transaction is handed to one of N single-threaded shards chosen
+ * by the hash of its card number, and the request thread waits for the result. All
+ * transactions for a card therefore run one at a time and in arrival order, so the
+ * history read by the correlation rules always includes the card's previous
+ * transaction, without any database locks. Different cards still score in parallel.
+ * <p>
+ * Callers must not hold a database transaction while they wait: a shard task that
+ * needs a connection would otherwise compete with its own waiting callers for the pool.
+ * <p>
+ * Each shard queue holds at most {@code queue-capacity} tasks, and callers wait at most
+ * {@code timeout-ms} for their task to start. Both fail the request with
+ * {@link ScoringUnavailableException}, and the task is skipped. A task that already
+ * started commits regardless, so its caller waits for the real outcome instead of
+ * failing a request the client would retry.
+ */
+@Component
+public class CardShardExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(CardShardExecutor.class);
+
+    private final boolean enabled;
+    private final long timeoutNanos;
+    private final ThreadPoolExecutor[] shards;
+
+    @Autowired
+    public CardShardExecutor(MeterRegistry meterRegistry,
+                             @Value("${antifraud.scoring.sharding.enabled:false}") boolean enabled,
+                             @Value("${antifraud.scoring.sharding.shards:0}") int shardCount,
+                             @Value("${antifraud.scoring.sharding.queue-capacity:1000}") int queueCapacity,
+                             @Value("${antifraud.scoring.sharding.timeout-ms:5000}") long timeoutMs) {
+        this.enabled = enabled;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        if (!enabled) {
+            this.shards = new ThreadPoolExecutor[0];
+            return;
+        }
+        int count = shardCount > 0 ? shardCount : Runtime.getRuntime().availableProcessors();
+        this.shards = new ThreadPoolExecutor[count];
+        for (int i = 0; i < count; i++) {
+            String name = "scoring-shard-" + i;
+            ThreadPoolExecutor shard = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), runnable -> new Thread(runnable, name));
+            shards[i] = shard;
+            Gauge.builder("antifraud.scoring.shard.queue.depth", shard, executor -> executor.getQueue().size())
+                    .description("Transactions waiting for a scoring shard")
+                    .tag("shard", Integer.toString(i))
+                    .register(meterRegistry);
+        }
+        log.info("Card-sharded scoring enabled with {} shards", count);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues the task on the card's shard. Tasks for the same card run in the order they were submitted.
+     *
+     * @throws ScoringUnavailableException if the shard's queue is full
+     */
+    public <T> CompletableFuture<T> submit(String number, Supplier<T> task) {
+        ShardFuture<T> future = new ShardFuture<>();
+        try {
+            shards[Math.floorMod(number.hashCode(), shards.length)].execute(() -> {
+                // The caller timed out or the batch failed before this task started
+                if (!future.claimed.compareAndSet(false, true)) {
+                    return;
+                }
+                try {
+                    future.complete(task.get());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            throw new ScoringUnavailableException("Scoring is overloaded, try again later!");
+        }
+        return future;
+    }
+
+    /**
+     * Runs the task on the card's shard and waits for it. Exceptions thrown by
+     * the task are rethrown as they are, so callers handle them as if it ran inline.
+     */
+    public <T> T execute(String number, Supplier<T> task) {
+        return await(submit(number, task), System.nanoTime() + timeoutNanos);
+    }
+
+    /**
+     * Waits for all tasks, together at most the configured timeout for them to start. On
+     * the first failure the tasks that haven't started yet are cancelled.
+     */
+    public <T> List<T> awaitAll(List<CompletableFuture<T>> futures) {
+        long deadline = System.nanoTime() + timeoutNanos;
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (CompletableFuture<T> future : futures) {
+                results.add(await(future, deadline));
+            }
+        } catch (RuntimeException | Error e) {
+            for (CompletableFuture<T> future : futures) {
+                future.cancel(false);
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    private static <T> T await(CompletableFuture<T> future, long deadline) {
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            if (future.cancel(false)) {
+                throw new ScoringUnavailableException("Scoring timed out, try again later!");
+            }
+        } catch (CancellationException e) {
+            throw new ScoringUnavailableException("Scoring timed out, try again later!");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (future.cancel(false)) {
+                throw new ScoringUnavailableException("Scoring was interrupted!");
+            }
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        }
+        // The task started before it could be cancelled; join() isn't interruptible
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable cause) {
+        if (cause instanceof RuntimeException exception) {
+            return exception;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return new IllegalStateException(cause);
+    }
+
+    // Can only be cancelled before its task starts; the task and a cancel race for the claim
+    private static final class ShardFuture<T> extends CompletableFuture<T> {
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return claimed.compareAndSet(false, true) && super.cancel(mayInterruptIfRunning);
+        }
+    }
+
+    // Lets queued transactions finish; new submissions are rejected from here on
+    @PreDestroy
+    public void shutdown() {
+        for (ThreadPoolExecutor shard : shards) {
+            shard.shutdown();
+        }
+        try {
+            for (ThreadPoolExecutor shard : shards) {
+                if (!shard.awaitTermination(30, TimeUnit.SECONDS)) {
+                    BlockingQueue<Runnable> pending = shard.getQueue();
+                    log.warn("Scoring shard did not finish within 30s; {} transactions dropped", pending.size());
+                    shard.shutdownNow();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
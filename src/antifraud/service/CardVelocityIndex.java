@@ -0,0 +1,414 @@
+package antifraud.service;
+
+import antifraud.model.Region;
+import antifraud.model.Transaction;
+import antifraud.repository.StateSnapshotStore;
+import antifraud.repository.TransactionJournal;
+import antifraud.repository.TransactionRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory, per-card sliding window over recently scored transactions.
+ * Answers the distinct IP / region counts needed by the correlation checks
+ * without querying the transactions table on every request.
+ * <p>
+ * Each card keeps a bounded ring buffer of (timestamp, ip, region) entries.
+ * Counts only look at the hour before the queried date; cards that have been idle
+ * for an hour are purged.
+ * <p>
+ * Transactions are recorded once they are committed. Until then the scored items of a
+ * batch are held in an {@link Overlay}, which the counts merge with the windows.
+ * <p>
+ * The windows are part of the state snapshot, together with the {@link RecordedIdWatermark},
+ * so a restart restores them and replays only the transactions above it.
+ */
+@Component
+public class CardVelocityIndex implements SnapshotParticipant {
+
+    private static final Logger log = LoggerFactory.getLogger(CardVelocityIndex.class);
+
+    private static final String SNAPSHOT_SECTION = "velocity";
+    // Transactions read per query when replaying those newer than the snapshot
+    private static final int REPLAY_PAGE_SIZE = 1000;
+
+    // Correlation checks look at the last hour of history
+    static final long WINDOW_SECONDS = 3600;
+
+    private final ConcurrentHashMap<String, CardWindow> windows = new ConcurrentHashMap<>();
+    // Overlays of the batches that are scored but not committed or rolled back yet
+    private final Set<Overlay> openOverlays = ConcurrentHashMap.newKeySet();
+    private final TransactionRepository transactionRepository;
+    private final TransactionJournal journal;
+    private final StateSnapshotStore snapshots;
+    private final RecordedIdWatermark watermark;
+    private final int capacity;
+
+    // Most recent transaction date seen across all cards, used to purge idle cards
+    private volatile long latestEpochSecond = Long.MIN_VALUE;
+
+    @Autowired
+    public CardVelocityIndex(TransactionRepository transactionRepository,
+                             TransactionJournal journal,
+                             StateSnapshotStore snapshots,
+                             RecordedIdWatermark watermark,
+                             @Value("${antifraud.velocity.capacity:64}") int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Velocity window capacity must be positive!");
+        }
+        this.transactionRepository = transactionRepository;
+        this.journal = journal;
+        this.snapshots = snapshots;
+        this.watermark = watermark;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Rebuilds the index from the transactions table, loading only the rows
+     * that can still fall into a window. With the journal enabled it is
+     * rebuilt from the journal instead.
+     * <p>
+     * At startup a state snapshot, if there is one, is restored instead.
+     */
+    @PostConstruct
+    public void initialize() {
+        if (snapshots != null) {
+            Optional<DataInputStream> section = snapshots.section(SNAPSHOT_SECTION);
+            if (section.isPresent() && restoreSnapshot(section.get())) {
+                return;
+            }
+        }
+        rebuild();
+    }
+
+    public void rebuild() {
+        windows.clear();
+        latestEpochSecond = Long.MIN_VALUE;
+        if (journal != null && journal.isEnabled()) {
+            rebuildFromJournal();
+            return;
+        }
+        transactionRepository.findTopByOrderByDateDesc().ifPresent(latest -> {
+            LocalDateTime windowStart = latest.getDate().minusSeconds(WINDOW_SECONDS);
+            List<Transaction> recent = transactionRepository.findByDateGreaterThanEqualOrderByDateAsc(windowStart);
+            for (Transaction transaction : recent) {
+                record(transaction);
+            }
+        });
+    }
+
+    // The journal has no date index: one pass finds the latest date, a second collects the window
+    private void rebuildFromJournal() {
+        LocalDateTime[] latest = new LocalDateTime[1];
+        journal.forEachAfter(0, transaction -> {
+            if (latest[0] == null || transaction.getDate().isAfter(latest[0])) {
+                latest[0] = transaction.getDate();
+            }
+        });
+        if (latest[0] == null) {
+            return;
+        }
+        LocalDateTime windowStart = latest[0].minusSeconds(WINDOW_SECONDS);
+        List<Transaction> recent = new ArrayList<>();
+        journal.forEachAfter(0, transaction -> {
+            if (!transaction.getDate().isBefore(windowStart)) {
+                recent.add(transaction);
+            }
+        });
+        recent.sort(Comparator.comparing(Transaction::getDate));
+        for (Transaction transaction : recent) {
+            record(transaction);
+        }
+    }
+
+    @Override
+    public String snapshotSection() {
+        return SNAPSHOT_SECTION;
+    }
+
+    /**
+     * Writes the watermark, then the windows. The watermark is read first, so the windows
+     * include every transaction up to it. They may also include some above it; replaying
+     * those adds duplicate entries, which don't change the distinct counts.
+     */
+    @Override
+    public void writeSnapshot(DataOutputStream out) throws IOException {
+        out.writeLong(watermark.lowWatermark());
+        out.writeLong(latestEpochSecond);
+        out.writeInt(capacity);
+        List<Map.Entry<String, CardWindow>> entries = new ArrayList<>(windows.entrySet());
+        out.writeInt(entries.size());
+        for (Map.Entry<String, CardWindow> entry : entries) {
+            out.writeUTF(entry.getKey());
+            entry.getValue().writeTo(out);
+        }
+    }
+
+    private boolean restoreSnapshot(DataInputStream in) {
+        long restoredUpTo;
+        try {
+            restoredUpTo = in.readLong();
+            latestEpochSecond = in.readLong();
+            // Recorded for information; windows are refilled with the current capacity
+            in.readInt();
+            int cards = in.readInt();
+            for (int i = 0; i < cards; i++) {
+                String number = in.readUTF();
+                CardWindow window = new CardWindow(capacity);
+                window.readFrom(in);
+                windows.put(number, window);
+            }
+        } catch (IOException e) {
+            log.warn("Velocity snapshot could not be restored, rebuilding from storage", e);
+            windows.clear();
+            latestEpochSecond = Long.MIN_VALUE;
+            return false;
+        }
+        long replayed = 0;
+        if (journal != null && journal.isEnabled()) {
+            long[] count = new long[1];
+            journal.forEachAfter(restoredUpTo, transaction -> {
+                record(transaction);
+                count[0]++;
+            });
+            replayed = count[0];
+        } else {
+            long afterId = restoredUpTo;
+            List<Transaction> page;
+            do {
+                page = transactionRepository.findByTransactionIdGreaterThanOrderByTransactionIdAsc(afterId, Limit.of(REPLAY_PAGE_SIZE));
+                for (Transaction transaction : page) {
+                    record(transaction);
+                    afterId = transaction.getTransactionId();
+                }
+                replayed += page.size();
+            } while (page.size() == REPLAY_PAGE_SIZE);
+        }
+        log.info("Velocity index restored from snapshot: {} cards, {} newer transactions replayed", windows.size(), replayed);
+        return true;
+    }
+
+    /**
+     * Adds a committed transaction to the card's window.
+     */
+    public void record(Transaction transaction) {
+        record(transaction.getNumber(), transaction.getDate(), transaction.getIp(), transaction.getRegion());
+    }
+
+    /**
+     * Adds an entry to the card's window.
+     */
+    public void record(String number, LocalDateTime date, String ip, Region region) {
+        long epochSecond = toEpochSecond(date);
+        windows.computeIfAbsent(number, key -> new CardWindow(capacity)).add(epochSecond, ip, region);
+        if (epochSecond > latestEpochSecond) {
+            latestEpochSecond = epochSecond;
+        }
+    }
+
+    /**
+     * Counts distinct IPs, other than {@code excludeIp}, used by the card within
+     * the hour before {@code date} (inclusive), including open overlays. Counting stops at {@code limit}.
+     */
+    public int countDistinctIps(String number, LocalDateTime date, String excludeIp, int limit) {
+        // Small fixed buffer: callers only need to know whether a limit was reached
+        String[] seen = new String[limit];
+        long at = toEpochSecond(date);
+        int count = 0;
+        CardWindow window = windows.get(number);
+        if (window != null) {
+            count = window.collectDistinctIps(at, excludeIp, seen, count);
+        }
+        for (Overlay overlay : openOverlays) {
+            CardWindow pending = overlay.windows.get(number);
+            if (pending != null) {
+                count = pending.collectDistinctIps(at, excludeIp, seen, count);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts distinct regions, other than {@code excludeRegion}, used by the card
+     * within the hour before {@code date} (inclusive), including open overlays.
+     */
+    public int countDistinctRegions(String number, LocalDateTime date, Region excludeRegion) {
+        long at = toEpochSecond(date);
+        int mask = 0;
+        CardWindow window = windows.get(number);
+        if (window != null) {
+            mask = window.regionMask(at, excludeRegion);
+        }
+        for (Overlay overlay : openOverlays) {
+            CardWindow pending = overlay.windows.get(number);
+            if (pending != null) {
+                mask |= pending.regionMask(at, excludeRegion);
+            }
+        }
+        return Integer.bitCount(mask);
+    }
+
+    /**
+     * Opens a new, empty overlay for the items of one batch. The counts include it until
+     * it is closed, which must happen only after the batch was recorded or rolled back.
+     */
+    public Overlay openOverlay() {
+        Overlay overlay = new Overlay(capacity);
+        openOverlays.add(overlay);
+        return overlay;
+    }
+
+    /**
+     * Drops cards whose newest entry has left the window, so idle cards don't accumulate.
+     * The window ends at the latest transaction date, which follows replayed history, but
+     * never later than the wall clock, so one far-future date can't purge every card.
+     */
+    @Scheduled(fixedDelayString = "${antifraud.velocity.purge-interval-ms:60000}")
+    public void purgeIdleCards() {
+        long cutoff = Math.min(latestEpochSecond, toEpochSecond(LocalDateTime.now())) - WINDOW_SECONDS;
+        windows.entrySet().removeIf(entry -> entry.getValue().isIdleBefore(cutoff));
+    }
+
+    private static long toEpochSecond(LocalDateTime date) {
+        return date.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /**
+     * Transactions of one batch that were scored but aren't committed yet. Every count
+     * sees them, so later items of the batch and later transactions of the same cards on
+     * their shards see them before the batch commits. The index itself only records the
+     * transactions once they are committed.
+     */
+    public final class Overlay implements AutoCloseable {
+        private final ConcurrentHashMap<String, CardWindow> windows = new ConcurrentHashMap<>();
+        private final int capacity;
+
+        private Overlay(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public void record(String number, LocalDateTime date, String ip, Region region) {
+            windows.computeIfAbsent(number, key -> new CardWindow(capacity)).add(toEpochSecond(date), ip, region);
+        }
+
+        @Override
+        public void close() {
+            openOverlays.remove(this);
+        }
+    }
+
+    /**
+     * Ring buffer of one card's recent entries. Entries are kept in arrival order;
+     * when the buffer is full the oldest arrival is overwritten. Nothing is evicted by
+     * date: the counts only look at the hour before the queried date, so a late, older
+     * transaction still sees its own hour, and a future-dated one doesn't evict the rest.
+     */
+    static final class CardWindow {
+        private final long[] timestamps;
+        private final String[] ips;
+        private final Region[] regions;
+        private int head;
+        private int size;
+        private long newest = Long.MIN_VALUE;
+
+        CardWindow(int capacity) {
+            this.timestamps = new long[capacity];
+            this.ips = new String[capacity];
+            this.regions = new Region[capacity];
+        }
+
+        synchronized void add(long epochSecond, String ip, Region region) {
+            if (epochSecond > newest) {
+                newest = epochSecond;
+            }
+            if (size == timestamps.length) {
+                head = (head + 1) % timestamps.length;
+                size--;
+            }
+            int tail = (head + size) % timestamps.length;
+            timestamps[tail] = epochSecond;
+            ips[tail] = ip;
+            regions[tail] = region;
+            size++;
+        }
+
+        // Adds the IPs not in seen yet, up to its length, and returns the new count
+        synchronized int collectDistinctIps(long at, String excludeIp, String[] seen, int count) {
+            long from = at - WINDOW_SECONDS;
+            for (int i = 0; i < size && count < seen.length; i++) {
+                int slot = (head + i) % timestamps.length;
+                if (timestamps[slot] < from || timestamps[slot] > at || ips[slot].equals(excludeIp)) {
+                    continue;
+                }
+                if (!contains(seen, count, ips[slot])) {
+                    seen[count++] = ips[slot];
+                }
+            }
+            return count;
+        }
+
+        synchronized int regionMask(long at, Region excludeRegion) {
+            int mask = 0;
+            long from = at - WINDOW_SECONDS;
+            for (int i = 0; i < size; i++) {
+                int slot = (head + i) % timestamps.length;
+                if (timestamps[slot] < from || timestamps[slot] > at || regions[slot] == excludeRegion) {
+                    continue;
+                }
+                mask |= 1 << regions[slot].ordinal();
+            }
+            return mask;
+        }
+
+        synchronized boolean isIdleBefore(long cutoff) {
+            return newest < cutoff;
+        }
+
+        // Entries in arrival order, so reading them back with add() rebuilds the same window
+        synchronized void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                int slot = (head + i) % timestamps.length;
+                out.writeLong(timestamps[slot]);
+                out.writeUTF(ips[slot]);
+                out.writeByte(regions[slot].ordinal());
+            }
+        }
+
+        void readFrom(DataInputStream in) throws IOException {
+            Region[] regionValues = Region.values();
+            int entries = in.readInt();
+            for (int i = 0; i < entries; i++) {
+                add(in.readLong(), in.readUTF(), regionValues[in.readByte()]);
+            }
+        }
+
+        private static boolean contains(String[] values, int count, String value) {
+            for (int i = 0; i < count; i++) {
+                if (values[i].equals(value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
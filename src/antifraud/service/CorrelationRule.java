@@ -0,0 +1,56 @@
+package antifraud.service;
+
+import antifraud.model.TransactionValidationResult;
+import antifraud.repository.CorrelationCounts;
+import antifraud.repository.TransactionRepository;
+
+/**
+ * Base for the rules counting how many other values the card used in the last hour.
+ * Two others need manual processing, three or more are prohibited.
+ * <p>
+ * Counts come from the in-memory {@link CardVelocityIndex}, or with
+ * {@code antifraud.velocity.source=database} from one aggregate query per
+ * transaction, shared by both rules through the {@link ScoringContext}.
+ */
+abstract class CorrelationRule implements FraudRule {
+
+    static final int MANUAL_CORRELATION_LIMIT = 2;
+    static final int PROHIBITED_CORRELATION_LIMIT = 3;
+
+    final CardVelocityIndex velocityIndex;
+    private final TransactionRepository transactionRepository;
+    final boolean fromDatabase;
+
+    CorrelationRule(CardVelocityIndex velocityIndex, TransactionRepository transactionRepository, String source) {
+        if (!"memory".equals(source) && !"database".equals(source)) {
+            throw new IllegalArgumentException("antifraud.velocity.source must be memory or database!");
+        }
+        this.velocityIndex = velocityIndex;
+        this.transactionRepository = transactionRepository;
+        this.fromDatabase = "database".equals(source);
+    }
+
+    @Override
+    public int cost() {
+        return fromDatabase ? COST_DATABASE : COST_IN_MEMORY_SCAN;
+    }
+
+    @Override
+    public ScoringStage stage() {
+        return ScoringStage.HISTORY;
+    }
+
+    CorrelationCounts databaseCounts(ScoringContext context) {
+        if (context.correlationCounts == null) {
+            context.correlationCounts = transactionRepository.countCorrelations(context.number,
+                    context.date.minusSeconds(CardVelocityIndex.WINDOW_SECONDS), context.date, context.ip, context.region);
+        }
+        return context.correlationCounts;
+    }
+
+    static TransactionValidationResult resultFor(long distinctCount) {
+        if (distinctCount >= PROHIBITED_CORRELATION_LIMIT) return TransactionValidationResult.PROHIBITED;
+        if (distinctCount == MANUAL_CORRELATION_LIMIT) return TransactionValidationResult.MANUAL_PROCESSING;
+        return TransactionValidationResult.ALLOWED;
+    }
+}
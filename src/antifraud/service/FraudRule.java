@@ -0,0 +1,42 @@
+package antifraud.service;
+
+import antifraud.model.FraudReason;
+import antifraud.model.TransactionValidationResult;
+
+/**
+ * One check of the scoring pipeline. Every {@code FraudRule} bean is picked up
+ * by {@link FraudRulePipeline}, which runs the rules cheapest first.
+ */
+public interface FraudRule {
+
+    // Cost classes, lower runs first
+    int COST_ARITHMETIC = 0;
+    int COST_IN_MEMORY_LOOKUP = 10;
+    int COST_IN_MEMORY_SCAN = 20;
+    int COST_DATABASE = 100;
+
+    /**
+     * The reason reported when this rule raises the result. Reasons are unique per rule.
+     */
+    FraudReason reason();
+
+    int cost();
+
+    /**
+     * The stage this rule's time is reported under.
+     */
+    ScoringStage stage();
+
+    /**
+     * The most severe result this rule can return. Rules that can't return
+     * PROHIBITED are skipped once the transaction is already prohibited.
+     */
+    default TransactionValidationResult maxResult() {
+        return TransactionValidationResult.PROHIBITED;
+    }
+
+    /**
+     * @return the result this rule alone asks for, ALLOWED if it doesn't apply
+     */
+    TransactionValidationResult evaluate(ScoringContext context);
+}
@@ -0,0 +1,73 @@
+package antifraud.service;
+
+import antifraud.model.FraudReason;
+import antifraud.model.TransactionValidationResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Runs all {@link FraudRule} beans against a transaction, ordered by cost once at startup.
+ * <p>
+ * Every reason of the final severity is reported, so a PROHIBITED hit only lets the
+ * pipeline skip the rules that can't prohibit, and stop once none of those that can are left.
+ * <p>
+ * Time is reported per {@link ScoringStage}: consecutive rules of the same stage are timed together.
+ */
+@Component
+public class FraudRulePipeline {
+
+    private final FraudRule[] rules;
+    // Index after the last rule that can return PROHIBITED
+    private final int prohibitingEnd;
+    private final ScoringMetrics metrics;
+
+    @Autowired
+    public FraudRulePipeline(List<FraudRule> rules, ScoringMetrics metrics) {
+        this.metrics = metrics;
+        Set<FraudReason> reasons = EnumSet.noneOf(FraudReason.class);
+        for (FraudRule rule : rules) {
+            if (!reasons.add(rule.reason())) {
+                throw new IllegalStateException("More than one fraud rule reports " + rule.reason().getCode());
+            }
+        }
+        this.rules = rules.stream()
+                .sorted(Comparator.comparingInt(FraudRule::cost).thenComparing(FraudRule::reason))
+                .toArray(FraudRule[]::new);
+        int end = 0;
+        for (int i = 0; i < this.rules.length; i++) {
+            if (this.rules[i].maxResult() == TransactionValidationResult.PROHIBITED) {
+                end = i + 1;
+            }
+        }
+        this.prohibitingEnd = end;
+    }
+
+    public void evaluate(ScoringContext context) {
+        ScoringStage stage = null;
+        long stageStart = 0;
+        for (int i = 0; i < rules.length; i++) {
+            FraudRule rule = rules[i];
+            if (context.prohibitedMask != 0) {
+                if (i >= prohibitingEnd) break;
+                if (rule.maxResult() != TransactionValidationResult.PROHIBITED) continue;
+            }
+            if (rule.stage() != stage) {
+                long now = System.nanoTime();
+                if (stage != null) {
+                    metrics.recordStage(stage, now - stageStart);
+                }
+                stage = rule.stage();
+                stageStart = now;
+            }
+            context.raise(rule.reason(), rule.evaluate(context));
+        }
+        if (stage != null) {
+            metrics.recordStage(stage, System.nanoTime() - stageStart);
+        }
+    }
+}
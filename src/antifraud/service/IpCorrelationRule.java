@@ -0,0 +1,34 @@
+package antifraud.service;
+
+import antifraud.model.FraudReason;
+import antifraud.model.TransactionValidationResult;
+import antifraud.repository.TransactionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counts the other IPs the card was used from in the last hour.
+ */
+@Component
+public class IpCorrelationRule extends CorrelationRule {
+
+    @Autowired
+    public IpCorrelationRule(CardVelocityIndex velocityIndex, TransactionRepository transactionRepository,
+                             @Value("${antifraud.velocity.source:memory}") String source) {
+        super(velocityIndex, transactionRepository, source);
+    }
+
+    @Override
+    public FraudReason reason() {
+        return FraudReason.IP_CORRELATION;
+    }
+
+    @Override
+    public TransactionValidationResult evaluate(ScoringContext context) {
+        if (fromDatabase) {
+            return resultFor(databaseCounts(context).getDistinctIps());
+        }
+        return resultFor(velocityIndex.countDistinctIps(context.number, context.date, context.ip, PROHIBITED_CORRELATION_LIMIT));
+    }
+}
@@ -0,0 +1,110 @@
+package antifraud.service;
+
+import antifraud.repository.TransactionJournal;
+import antifraud.repository.TransactionRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Low-water mark of the transaction IDs recorded in the in-memory state, the velocity
+ * windows and the rollups: every ID at or below it was recorded, or belongs to a
+ * transaction that rolled back. Snapshots store it, so a restore replays everything above.
+ * <p>
+ * IDs are handed out in order, but committed and recorded out of order across threads
+ * and shards, so the highest recorded ID won't do. Every transaction that stores scored
+ * transactions opens a {@link Ticket} before it gets its IDs and closes it once they
+ * were recorded or rolled back. The ticket's floor is one above the highest ID seen so
+ * far; IDs allocated after it opened can't be lower. The mark is one below the lowest
+ * open floor, or the highest ID seen while no ticket is open.
+ */
+@Component
+public class RecordedIdWatermark {
+
+    private final TransactionRepository transactionRepository;
+    private final TransactionJournal journal;
+    private final ReentrantLock lock = new ReentrantLock();
+    // Floors of the open tickets, with the number of tickets per floor (guarded by lock)
+    private final TreeMap<Long, Integer> openFloors = new TreeMap<>();
+    // Highest ID recorded or stored before startup (guarded by lock)
+    private long highestSeen;
+
+    @Autowired
+    public RecordedIdWatermark(TransactionRepository transactionRepository, TransactionJournal journal) {
+        this.transactionRepository = transactionRepository;
+        this.journal = journal;
+    }
+
+    // The participants replay everything stored while they initialize, before any ticket opens
+    @PostConstruct
+    public void initialize() {
+        seen(journal != null && journal.isEnabled() ? journal.lastTransactionId() : transactionRepository.findMaxTransactionId());
+    }
+
+    /**
+     * Opens a ticket; must happen before the transaction gets its IDs.
+     */
+    public Ticket open() {
+        lock.lock();
+        try {
+            long floor = highestSeen + 1;
+            openFloors.merge(floor, 1, Integer::sum);
+            return new Ticket(floor);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Notes a recorded ID.
+     */
+    public void seen(long transactionId) {
+        lock.lock();
+        try {
+            if (transactionId > highestSeen) {
+                highestSeen = transactionId;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long lowWatermark() {
+        lock.lock();
+        try {
+            Map.Entry<Long, Integer> lowest = openFloors.firstEntry();
+            return lowest == null ? highestSeen : lowest.getKey() - 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public final class Ticket {
+        private final long floor;
+        private boolean closed;
+
+        private Ticket(long floor) {
+            this.floor = floor;
+        }
+
+        /**
+         * Closes the ticket once its transaction's IDs were recorded, or it rolled back.
+         */
+        public void close() {
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                openFloors.computeIfPresent(floor, (key, count) -> count == 1 ? null : count - 1);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
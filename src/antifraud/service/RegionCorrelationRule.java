@@ -0,0 +1,34 @@
+package antifraud.service;
+
+import antifraud.model.FraudReason;
+import antifraud.model.TransactionValidationResult;
+import antifraud.repository.TransactionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counts the other regions the card was used in during the last hour.
+ */
+@Component
+public class RegionCorrelationRule extends CorrelationRule {
+
+    @Autowired
+    public RegionCorrelationRule(CardVelocityIndex velocityIndex, TransactionRepository transactionRepository,
+                                 @Value("${antifraud.velocity.source:memory}") String source) {
+        super(velocityIndex, transactionRepository, source);
+    }
+
+    @Override
+    public FraudReason reason() {
+        return FraudReason.REGION_CORRELATION;
+    }
+
+    @Override
+    public TransactionValidationResult evaluate(ScoringContext context) {
+        if (fromDatabase) {
+            return resultFor(databaseCounts(context).getDistinctRegions());
+        }
+        return resultFor(velocityIndex.countDistinctRegions(context.number, context.date, context.region));
+    }
+}
@@ -0,0 +1,64 @@
+package antifraud.service;
+
+import antifraud.model.FraudReason;
+import antifraud.model.Region;
+import antifraud.model.TransactionValidationResult;
+import antifraud.repository.CorrelationCounts;
+
+import java.time.LocalDateTime;
+
+/**
+ * The parsed transaction being scored, plus the reasons the rules raised so far.
+ * Reasons are kept as one {@link FraudReason} bit mask per severity.
+ */
+public final class ScoringContext {
+
+    final long amount;
+    final String ip;
+    // IPv4 address as an unsigned 32-bit value
+    final long ipAddress;
+    final String number;
+    // Encoded card number, or CardNumbers.NOT_ENCODABLE
+    final long cardKey;
+    final Region region;
+    final LocalDateTime date;
+    final String merchant;
+
+    int manualMask;
+    int prohibitedMask;
+    // Filled by the first correlation rule when counts come from the database
+    CorrelationCounts correlationCounts;
+    // The batch's items, scored but not committed yet; null outside batches
+    CardVelocityIndex.Overlay overlay;
+
+    ScoringContext(long amount, String ip, long ipAddress, String number, long cardKey,
+                   Region region, LocalDateTime date, String merchant) {
+        this.amount = amount;
+        this.ip = ip;
+        this.ipAddress = ipAddress;
+        this.number = number;
+        this.cardKey = cardKey;
+        this.region = region;
+        this.date = date;
+        this.merchant = merchant;
+    }
+
+    void raise(FraudReason reason, TransactionValidationResult result) {
+        if (result == TransactionValidationResult.PROHIBITED) {
+            prohibitedMask |= reason.bit();
+        } else if (result == TransactionValidationResult.MANUAL_PROCESSING) {
+            manualMask |= reason.bit();
+        }
+    }
+
+    TransactionValidationResult result() {
+        if (prohibitedMask != 0) return TransactionValidationResult.PROHIBITED;
+        if (manualMask != 0) return TransactionValidationResult.MANUAL_PROCESSING;
+        return TransactionValidationResult.ALLOWED;
+    }
+
+    // Only the reasons of the final severity are reported
+    int reportedMask() {
+        return prohibitedMask != 0 ? prohibitedMask : manualMask;
+    }
+}
@@ -0,0 +1,92 @@
+package antifraud.service;
+
+import antifraud.model.FraudReason;
+import antifraud.model.TransactionValidationResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters for scoring, feedback and history. All meters are registered up
+ * front and looked up by ordinal, so recording on the hot path is just the update.
+ * <ul>
+ *     <li>{@code antifraud.scoring.stage}, tagged {@code stage}: time per {@link ScoringStage}</li>
+ *     <li>{@code antifraud.scoring.results}, tagged {@code result}: scored transactions per result</li>
+ *     <li>{@code antifraud.scoring.reasons}, tagged {@code reason}: reasons reported in the info field</li>
+ *     <li>{@code antifraud.feedback.stage} and {@code antifraud.history.stage}, tagged {@code stage}</li>
+ * </ul>
+ */
+@Component
+public class ScoringMetrics {
+
+    private final Timer[] scoringStages;
+    private final Counter[] results;
+    private final Counter[] reasons;
+
+    final Timer feedbackFlush;
+    final Timer feedbackLookup;
+    final Timer feedbackLimits;
+    final Timer feedbackPersist;
+    final Timer historyFlush;
+    final Timer historyQuery;
+    final Timer historyArchive;
+
+    @Autowired
+    public ScoringMetrics(MeterRegistry meterRegistry) {
+        ScoringStage[] stages = ScoringStage.values();
+        scoringStages = new Timer[stages.length];
+        for (ScoringStage stage : stages) {
+            scoringStages[stage.ordinal()] = Timer.builder("antifraud.scoring.stage")
+                    .description("Time spent in one stage of scoring a transaction")
+                    .tag("stage", stage.tag())
+                    .register(meterRegistry);
+        }
+        TransactionValidationResult[] resultValues = TransactionValidationResult.values();
+        results = new Counter[resultValues.length];
+        for (TransactionValidationResult result : resultValues) {
+            results[result.ordinal()] = Counter.builder("antifraud.scoring.results")
+                    .description("Scored transactions by result")
+                    .tag("result", result.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry);
+        }
+        FraudReason[] reasonValues = FraudReason.values();
+        reasons = new Counter[reasonValues.length];
+        for (FraudReason reason : reasonValues) {
+            reasons[reason.ordinal()] = Counter.builder("antifraud.scoring.reasons")
+                    .description("Reasons reported for MANUAL_PROCESSING and PROHIBITED results")
+                    .tag("reason", reason.getCode())
+                    .register(meterRegistry);
+        }
+        feedbackFlush = stageTimer(meterRegistry, "antifraud.feedback.stage", "flush", "Time spent in one stage of adding feedback");
+        feedbackLookup = stageTimer(meterRegistry, "antifraud.feedback.stage", "lookup", "Time spent in one stage of adding feedback");
+        feedbackLimits = stageTimer(meterRegistry, "antifraud.feedback.stage", "limits", "Time spent in one stage of adding feedback");
+        feedbackPersist = stageTimer(meterRegistry, "antifraud.feedback.stage", "persist", "Time spent in one stage of adding feedback");
+        historyFlush = stageTimer(meterRegistry, "antifraud.history.stage", "flush", "Time spent in one stage of reading history");
+        historyQuery = stageTimer(meterRegistry, "antifraud.history.stage", "query", "Time spent in one stage of reading history");
+        historyArchive = stageTimer(meterRegistry, "antifraud.history.stage", "archive", "Time spent in one stage of reading history");
+    }
+
+    public void recordStage(ScoringStage stage, long nanos) {
+        scoringStages[stage.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param reasonMask the {@link FraudReason} bits reported with the result
+     */
+    public void recordResult(TransactionValidationResult result, int reasonMask) {
+        results[result.ordinal()].increment();
+        while (reasonMask != 0) {
+            reasons[Integer.numberOfTrailingZeros(reasonMask)].increment();
+            reasonMask &= reasonMask - 1;
+        }
+    }
+
+    private static Timer stageTimer(MeterRegistry meterRegistry, String name, String stage, String description) {
+        return Timer.builder(name).description(description).tag("stage", stage).register(meterRegistry);
+    }
+}
@@ -0,0 +1,23 @@
+package antifraud.service;
+
+import java.util.Locale;
+
+/**
+ * Stages of scoring a transaction, each with its own timer in {@link ScoringMetrics}.
+ */
+public enum ScoringStage {
+    // Date and region parsing
+    PARSE,
+    // Correlation counts over the card's recent transactions
+    HISTORY,
+    // Stolen card and suspicious IP lookups
+    BLOCKLISTS,
+    // Amount limits and the final result
+    DECISION,
+    // Saving or queueing the transaction
+    PERSIST;
+
+    public String tag() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,15 @@
+package antifraud.service;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * In-memory state saved in the periodic state snapshot, see {@link StateSnapshotWriter}.
+ * Participants restore their own section from {@code StateSnapshotStore} when they initialize.
+ */
+public interface SnapshotParticipant {
+
+    String snapshotSection();
+
+    void writeSnapshot(DataOutputStream out) throws IOException;
+}
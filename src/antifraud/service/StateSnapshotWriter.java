@@ -0,0 +1,64 @@
+package antifraud.service;
+
+import antifraud.repository.StateSnapshotStore;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Periodically writes the state of every {@link SnapshotParticipant} to the snapshot
+ * file, and once more on shutdown, so the next start can restore it and only
+ * replay the rows added since.
+ */
+@Component
+public class StateSnapshotWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(StateSnapshotWriter.class);
+
+    private final StateSnapshotStore store;
+    private final List<SnapshotParticipant> participants;
+
+    @Autowired
+    public StateSnapshotWriter(StateSnapshotStore store, List<SnapshotParticipant> participants) {
+        this.store = store;
+        this.participants = participants;
+    }
+
+    @Scheduled(fixedDelayString = "${antifraud.snapshot.interval-ms:300000}",
+            initialDelayString = "${antifraud.snapshot.interval-ms:300000}")
+    public void writeSnapshot() {
+        if (!store.isEnabled()) {
+            return;
+        }
+        long start = System.nanoTime();
+        Map<String, byte[]> sections = new LinkedHashMap<>();
+        try {
+            for (SnapshotParticipant participant : participants) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (DataOutputStream out = new DataOutputStream(bytes)) {
+                    participant.writeSnapshot(out);
+                }
+                sections.put(participant.snapshotSection(), bytes.toByteArray());
+            }
+            store.write(sections);
+            log.info("State snapshot written in {} ms", (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            log.error("State snapshot could not be written", e);
+        }
+    }
+
+    @PreDestroy
+    public void writeOnShutdown() {
+        writeSnapshot();
+    }
+}
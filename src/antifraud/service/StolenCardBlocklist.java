@@ -0,0 +1,268 @@
+package antifraud.service;
+
+import antifraud.model.StolenCard;
+import antifraud.repository.StateSnapshotStore;
+import antifraud.repository.StolenCardRepository;
+import antifraud.util.CardNumbers;
+import antifraud.util.LongBloomFilter;
+import antifraud.util.LongHashSet;
+import antifraud.util.TransactionCallbacks;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-process copy of the stolen card table, keyed by the card number encoded as a {@code long}.
+ * <p>
+ * A Bloom filter answers the common "not stolen" case; positives are confirmed
+ * against an open-addressing set. Readers see an immutable snapshot that writers
+ * replace atomically, so lookups take no lock and allocate nothing.
+ * <p>
+ * The set is part of the state snapshot. It is restored at startup unless rows were
+ * deleted since the snapshot was taken; newer rows are then loaded by ID. Changes reach
+ * the set after they commit, so writers announce themselves with {@link #beginWrite}; a
+ * snapshot taken while one is in progress is marked as incomplete and not restored.
+ */
+@Component
+public class StolenCardBlocklist implements SnapshotParticipant {
+
+    private static final Logger log = LoggerFactory.getLogger(StolenCardBlocklist.class);
+
+    private static final String SNAPSHOT_SECTION = "stolen-cards";
+    // Written instead of the highest ID when the set may lag behind the table
+    private static final long INCOMPLETE = -1;
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final int MIN_BLOOM_CAPACITY = 1024;
+
+    private final StolenCardRepository cardRepository;
+    private final StateSnapshotStore snapshots;
+    private volatile Snapshot snapshot = Snapshot.empty();
+    // Guards writers; reload() holds it across findAll(), see SuspiciousIpIndex
+    private final ReentrantLock lock = new ReentrantLock();
+    // Transactions changing the table whose change hasn't reached the set yet; guarded by lock
+    private int pendingWrites;
+
+    @Autowired
+    public StolenCardBlocklist(StolenCardRepository cardRepository, StateSnapshotStore snapshots) {
+        this.cardRepository = cardRepository;
+        this.snapshots = snapshots;
+    }
+
+    @PostConstruct
+    public void initialize() {
+        Optional<DataInputStream> section = snapshots.section(SNAPSHOT_SECTION);
+        if (section.isEmpty() || !restoreSnapshot(section.get())) {
+            reload();
+        }
+    }
+
+    public void reload() {
+        lock.lock();
+        try {
+            LongHashSet cards = new LongHashSet();
+            for (StolenCard card : cardRepository.findAll()) {
+                long key = CardNumbers.encode(card.getNumber());
+                if (key != CardNumbers.NOT_ENCODABLE) {
+                    cards.add(key);
+                }
+            }
+            snapshot = Snapshot.of(cards);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param key a card number encoded with {@link CardNumbers#encode}
+     */
+    public boolean contains(long key) {
+        Snapshot current = snapshot;
+        return current.bloom.mightContain(key) && current.cards.contains(key);
+    }
+
+    public void add(long key) {
+        lock.lock();
+        try {
+            Snapshot current = snapshot;
+            if (current.cards.contains(key)) {
+                return;
+            }
+            LongHashSet cards = current.cards.copy();
+            cards.add(key);
+            if (cards.size() > current.bloomCapacity) {
+                snapshot = Snapshot.of(cards);
+            } else {
+                LongBloomFilter bloom = current.bloom.copy();
+                bloom.put(key);
+                snapshot = new Snapshot(cards, bloom, current.bloomCapacity);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds many keys with a single copy of the set, e.g. after a bulk import.
+     */
+    public void addAll(long[] keys) {
+        if (keys.length == 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            LongHashSet cards = snapshot.cards.copy();
+            for (long key : keys) {
+                cards.add(key);
+            }
+            snapshot = Snapshot.of(cards);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void remove(long key) {
+        lock.lock();
+        try {
+            Snapshot current = snapshot;
+            if (!current.cards.contains(key)) {
+                return;
+            }
+            LongHashSet cards = current.cards.copy();
+            cards.remove(key);
+            // Bloom filters can't forget keys, so rebuild from the remaining set
+            snapshot = Snapshot.of(cards);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marks a change of the stolen card table that will reach this set once it commits.
+     * Must be called inside the changing transaction, before the change; the mark is
+     * cleared when the transaction completes.
+     */
+    public void beginWrite() {
+        lock.lock();
+        try {
+            pendingWrites++;
+        } finally {
+            lock.unlock();
+        }
+        TransactionCallbacks.afterCompletion(() -> {
+            lock.lock();
+            try {
+                pendingWrites--;
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    public int size() {
+        return snapshot.cards.size();
+    }
+
+    @Override
+    public String snapshotSection() {
+        return SNAPSHOT_SECTION;
+    }
+
+    // The highest ID and row count are read under the lock, together with the set, and
+    // only while no change is between its commit and its update of the set
+    @Override
+    public void writeSnapshot(DataOutputStream out) throws IOException {
+        long[] keys;
+        long maxId;
+        long rows;
+        lock.lock();
+        try {
+            if (pendingWrites > 0) {
+                maxId = INCOMPLETE;
+                rows = 0;
+                keys = new long[0];
+            } else {
+                maxId = cardRepository.findMaxId();
+                rows = cardRepository.countByIdLessThanEqual(maxId);
+                keys = snapshot.cards.toArray();
+            }
+        } finally {
+            lock.unlock();
+        }
+        out.writeLong(maxId);
+        out.writeLong(rows);
+        out.writeInt(keys.length);
+        for (long key : keys) {
+            out.writeLong(key);
+        }
+    }
+
+    private boolean restoreSnapshot(DataInputStream in) {
+        lock.lock();
+        try {
+            long maxId = in.readLong();
+            long rows = in.readLong();
+            if (maxId == INCOMPLETE) {
+                log.info("Stolen card snapshot was taken during a change, reloading from the database");
+                return false;
+            }
+            if (cardRepository.countByIdLessThanEqual(maxId) != rows) {
+                log.info("Stolen cards were deleted since the snapshot, reloading from the database");
+                return false;
+            }
+            int count = in.readInt();
+            LongHashSet cards = new LongHashSet(count);
+            for (int i = 0; i < count; i++) {
+                cards.add(in.readLong());
+            }
+            for (StolenCard card : cardRepository.findByIdGreaterThan(maxId)) {
+                long key = CardNumbers.encode(card.getNumber());
+                if (key != CardNumbers.NOT_ENCODABLE) {
+                    cards.add(key);
+                }
+            }
+            snapshot = Snapshot.of(cards);
+            log.info("Stolen card blocklist restored from snapshot with {} cards", cards.size());
+            return true;
+        } catch (IOException e) {
+            log.warn("Stolen card snapshot could not be restored, reloading from the database", e);
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Snapshot {
+        final LongHashSet cards;
+        final LongBloomFilter bloom;
+        final int bloomCapacity;
+
+        Snapshot(LongHashSet cards, LongBloomFilter bloom, int bloomCapacity) {
+            this.cards = cards;
+            this.bloom = bloom;
+            this.bloomCapacity = bloomCapacity;
+        }
+
+        static Snapshot empty() {
+            return of(new LongHashSet());
+        }
+
+        // Sized with headroom so single additions don't force a rebuild
+        static Snapshot of(LongHashSet cards) {
+            int capacity = Math.max(MIN_BLOOM_CAPACITY, cards.size() * 2);
+            LongBloomFilter bloom = new LongBloomFilter(capacity, FALSE_POSITIVE_RATE);
+            for (long key : cards.toArray()) {
+                bloom.put(key);
+            }
+            return new Snapshot(cards, bloom, capacity);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package antifraud.service;
+
+import antifraud.model.FraudReason;
+import antifraud.model.TransactionValidationResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Prohibits transactions with a stolen card.
+ * Served by the in-memory blocklist; only numbers it can't encode go to the database.
+ */
+@Component
+public class StolenCardRule implements FraudRule {
+
+    private final StolenCardService stolenCardService;
+
+    @Autowired
+    public StolenCardRule(StolenCardService stolenCardService) {
+        this.stolenCardService = stolenCardService;
+    }
+
+    @Override
+    public FraudReason reason() {
+        return FraudReason.CARD_NUMBER;
+    }
+
+    @Override
+    public int cost() {
+        return COST_IN_MEMORY_LOOKUP;
+    }
+
+    @Override
+    public ScoringStage stage() {
+        return ScoringStage.BLOCKLISTS;
+    }
+
+    @Override
+    public TransactionValidationResult evaluate(ScoringContext context) {
+        return stolenCardService.isCardStolen(context.number, context.cardKey)
+                ? TransactionValidationResult.PROHIBITED
+                : TransactionValidationResult.ALLOWED;
+    }
+}
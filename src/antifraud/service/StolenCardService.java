@@ -1,28 +1,53 @@
 package antifraud.service;
 
 
+import antifraud.dto.BulkImportResponse;
 import antifraud.exception.StolenCardConflictException;
 import antifraud.exception.StolenCardNotFoundException;
 import antifraud.model.StolenCard;
+import antifraud.repository.BlocklistJdbcWriter;
 import antifraud.repository.StolenCardRepository;
+import antifraud.util.BlocklistFeed;
+import antifraud.util.CardNumbers;
+import antifraud.util.LongHashSet;
+import antifraud.util.TransactionCallbacks;
 import antifraud.util.ValidationUtil;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 public class StolenCardService {
 
     private final StolenCardRepository cardRepository;
+    private final StolenCardBlocklist blocklist;
     private final ValidationUtil validationUtil;
+    private final BlocklistJdbcWriter jdbcWriter;
+    private final int importBatchSize;
+    @PersistenceContext
+    private EntityManager entityManager;
 
     @Autowired
-    public StolenCardService(StolenCardRepository cardRepository, ValidationUtil validationUtil) {
+    public StolenCardService(StolenCardRepository cardRepository, StolenCardBlocklist blocklist, ValidationUtil validationUtil,
+                             BlocklistJdbcWriter jdbcWriter,
+                             @Value("${antifraud.blocklist.import-batch-size:1000}") int importBatchSize) {
         this.cardRepository = cardRepository;
+        this.blocklist = blocklist;
         this.validationUtil = validationUtil;
+        this.jdbcWriter = jdbcWriter;
+        this.importBatchSize = importBatchSize;
     }
 
     @Transactional
@@ -35,8 +60,14 @@ public class StolenCardService {
             // Throw specific exception for conflict
             throw new StolenCardConflictException("Card number " + number + " already exists!");
         }
+        blocklist.beginWrite();
         StolenCard stolenCard = new StolenCard(null, number);
-        return cardRepository.save(stolenCard);
+        StolenCard saved = cardRepository.save(stolenCard);
+        long key = CardNumbers.encode(number);
+        if (key != CardNumbers.NOT_ENCODABLE) {
+            TransactionCallbacks.afterCommit(() -> blocklist.add(key));
+        }
+        return saved;
     }
 
     @Transactional
@@ -49,7 +80,12 @@ public class StolenCardService {
                 // Throw specific exception for not found
                 .orElseThrow(() -> new StolenCardNotFoundException("Card number " + number + " not found!"));
 
+        blocklist.beginWrite();
         cardRepository.delete(stolenCard);
+        long key = CardNumbers.encode(number);
+        if (key != CardNumbers.NOT_ENCODABLE) {
+            TransactionCallbacks.afterCommit(() -> blocklist.remove(key));
+        }
         return Map.of("status", "Card " + number + " successfully removed!");
     }
 
@@ -57,8 +93,70 @@ public class StolenCardService {
         return cardRepository.findAllByOrderByIdAsc();
     }
 
+    /**
+     * Imports a CSV or NDJSON feed of card numbers (see {@link BlocklistFeed}) in one
+     * database transaction. Lines failing the Luhn check are counted as invalid,
+     * numbers already stored or repeated in the feed as duplicates.
+     */
+    @Transactional(rollbackFor = IOException.class)
+    public BulkImportResponse importStolenCards(Reader feed) throws IOException {
+        blocklist.beginWrite();
+        LongHashSet inserted = new LongHashSet();
+        BlocklistImport bulk = new BlocklistImport(importBatchSize, jdbcWriter::findExistingStolenCards,
+                jdbcWriter::insertStolenCards, number -> {
+                    long key = CardNumbers.encode(number);
+                    if (key != CardNumbers.NOT_ENCODABLE) {
+                        inserted.add(key);
+                    }
+                });
+        LongHashSet seen = new LongHashSet();
+        Set<String> seenNotEncodable = new HashSet<>();
+        BlocklistFeed.forEachEntry(feed, "number", number -> {
+            if (number == null || !validationUtil.isValidLuhn(number)) {
+                bulk.invalid();
+                return;
+            }
+            long key = CardNumbers.encode(number);
+            boolean first = key != CardNumbers.NOT_ENCODABLE ? seen.add(key) : seenNotEncodable.add(number);
+            if (first) {
+                bulk.add(number);
+            } else {
+                bulk.duplicate();
+            }
+        });
+        BulkImportResponse response = bulk.finish();
+        long[] keys = inserted.toArray();
+        TransactionCallbacks.afterCommit(() -> blocklist.addAll(keys));
+        return response;
+    }
+
+    /**
+     * Passes every stolen card to {@code consumer} in ID order, detaching each one
+     * once consumed, so memory use doesn't grow with the size of the table.
+     */
+    @Transactional(readOnly = true)
+    public void streamStolenCards(Consumer<StolenCard> consumer) {
+        try (Stream<StolenCard> cards = cardRepository.streamAllByOrderByIdAsc()) {
+            cards.forEach(card -> {
+                consumer.accept(card);
+                entityManager.detach(card);
+            });
+        }
+    }
+
     public boolean isCardStolen(String number) {
         // Format validation should happen before calling this in TransactionService
-        return cardRepository.existsByNumber(number);
+        return isCardStolen(number, CardNumbers.encode(number));
+    }
+
+    /**
+     * @param key the number as already encoded by {@link ValidationUtil#parseLuhn}
+     */
+    public boolean isCardStolen(String number, long key) {
+        if (key == CardNumbers.NOT_ENCODABLE) {
+            // Not representable in the in-memory blocklist, ask the database
+            return cardRepository.existsByNumber(number);
+        }
+        return blocklist.contains(key);
     }
 }
\ No newline at end of file
@@ -0,0 +1,323 @@
+package antifraud.service;
+
+import antifraud.model.SuspiciousIp;
+import antifraud.repository.StateSnapshotStore;
+import antifraud.repository.SuspiciousIpRepository;
+import antifraud.util.Ipv4;
+import antifraud.util.TransactionCallbacks;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-process copy of the suspicious IP table. Entries are IPv4 addresses or CIDR
+ * blocks, stored as sorted {@code int} network addresses grouped by prefix length.
+ * <p>
+ * A lookup masks the address once per prefix length in use and binary searches
+ * that group. Readers see an immutable snapshot that writers replace atomically,
+ * so lookups take no lock and never touch the database.
+ * <p>
+ * The blocks are part of the state snapshot, restored the same way as
+ * {@link StolenCardBlocklist}.
+ */
+@Component
+public class SuspiciousIpIndex implements SnapshotParticipant {
+
+    private static final Logger log = LoggerFactory.getLogger(SuspiciousIpIndex.class);
+
+    private static final String SNAPSHOT_SECTION = "suspicious-ips";
+    // Written instead of the highest ID when the blocks may lag behind the table
+    private static final long INCOMPLETE = -1;
+
+    private static final int[] NONE = new int[0];
+
+    private final SuspiciousIpRepository ipRepository;
+    private final StateSnapshotStore snapshots;
+    private volatile Snapshot snapshot = new Snapshot(new int[33][]);
+    // Serializes writers; not synchronized, since reload() queries the database while holding it
+    // and a virtual thread blocked inside a monitor pins its carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    // Transactions changing the table whose change hasn't reached the index yet; guarded by lock
+    private int pendingWrites;
+
+    @Autowired
+    public SuspiciousIpIndex(SuspiciousIpRepository ipRepository, StateSnapshotStore snapshots) {
+        this.ipRepository = ipRepository;
+        this.snapshots = snapshots;
+    }
+
+    @PostConstruct
+    public void initialize() {
+        Optional<DataInputStream> section = snapshots.section(SNAPSHOT_SECTION);
+        if (section.isEmpty() || !restoreSnapshot(section.get())) {
+            reload();
+        }
+    }
+
+    public void reload() {
+        lock.lock();
+        try {
+            snapshot = build(parseBlocks(ipRepository.findAll()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static long[] parseBlocks(List<SuspiciousIp> entries) {
+        return entries.stream()
+                .mapToLong(entry -> Ipv4.parseBlock(entry.getIp()))
+                .filter(block -> block != Ipv4.INVALID)
+                .toArray();
+    }
+
+    private static Snapshot build(long[] blocks) {
+        int[][] networks = new int[33][];
+        int[] counts = new int[33];
+        for (long block : blocks) {
+            counts[Ipv4.blockPrefixLength(block)]++;
+        }
+        for (int prefix = 0; prefix <= 32; prefix++) {
+            networks[prefix] = counts[prefix] == 0 ? null : new int[counts[prefix]];
+            counts[prefix] = 0;
+        }
+        for (long block : blocks) {
+            int prefix = Ipv4.blockPrefixLength(block);
+            networks[prefix][counts[prefix]++] = Ipv4.blockAddress(block);
+        }
+        for (int[] group : networks) {
+            if (group != null) {
+                Arrays.sort(group);
+            }
+        }
+        return new Snapshot(networks);
+    }
+
+    /**
+     * @param address an IPv4 address as returned by {@link Ipv4#parse}
+     */
+    public boolean contains(int address) {
+        Snapshot current = snapshot;
+        for (int prefix : current.prefixes) {
+            if (Arrays.binarySearch(current.networks[prefix], address & Ipv4.maskOf(prefix)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param block a block as returned by {@link Ipv4#parseBlock}
+     */
+    public void add(long block) {
+        lock.lock();
+        try {
+            int prefix = Ipv4.blockPrefixLength(block);
+            int network = Ipv4.blockAddress(block);
+            int[] group = groupOf(prefix);
+            int position = Arrays.binarySearch(group, network);
+            if (position >= 0) {
+                return;
+            }
+            int insertAt = -position - 1;
+            int[] updated = new int[group.length + 1];
+            System.arraycopy(group, 0, updated, 0, insertAt);
+            updated[insertAt] = network;
+            System.arraycopy(group, insertAt, updated, insertAt + 1, group.length - insertAt);
+            replaceGroup(prefix, updated);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds many blocks with a single rebuild, e.g. after a bulk import.
+     */
+    public void addAll(long[] blocks) {
+        if (blocks.length == 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            long[] current = blocksOf(snapshot.networks);
+            long[] merged = Arrays.copyOf(current, current.length + blocks.length);
+            System.arraycopy(blocks, 0, merged, current.length, blocks.length);
+            // Drop blocks that were already indexed, e.g. via a legacy non-canonical row
+            Arrays.sort(merged);
+            int unique = 0;
+            for (int i = 0; i < merged.length; i++) {
+                if (unique == 0 || merged[i] != merged[unique - 1]) {
+                    merged[unique++] = merged[i];
+                }
+            }
+            snapshot = build(Arrays.copyOf(merged, unique));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void remove(long block) {
+        lock.lock();
+        try {
+            int prefix = Ipv4.blockPrefixLength(block);
+            int network = Ipv4.blockAddress(block);
+            int[] group = groupOf(prefix);
+            int position = Arrays.binarySearch(group, network);
+            if (position < 0) {
+                return;
+            }
+            int[] updated = new int[group.length - 1];
+            System.arraycopy(group, 0, updated, 0, position);
+            System.arraycopy(group, position + 1, updated, position, group.length - position - 1);
+            replaceGroup(prefix, updated.length == 0 ? null : updated);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marks a change of the suspicious IP table; see {@link StolenCardBlocklist#beginWrite}.
+     */
+    public void beginWrite() {
+        lock.lock();
+        try {
+            pendingWrites++;
+        } finally {
+            lock.unlock();
+        }
+        TransactionCallbacks.afterCompletion(() -> {
+            lock.lock();
+            try {
+                pendingWrites--;
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    @Override
+    public String snapshotSection() {
+        return SNAPSHOT_SECTION;
+    }
+
+    // Same as StolenCardBlocklist: ID mark, row count and blocks under the lock, with no change pending
+    @Override
+    public void writeSnapshot(DataOutputStream out) throws IOException {
+        int[][] networks;
+        long maxId;
+        long rows;
+        lock.lock();
+        try {
+            if (pendingWrites > 0) {
+                maxId = INCOMPLETE;
+                rows = 0;
+                networks = new int[33][];
+            } else {
+                maxId = ipRepository.findMaxId();
+                rows = ipRepository.countByIdLessThanEqual(maxId);
+                networks = snapshot.networks;
+            }
+        } finally {
+            lock.unlock();
+        }
+        long[] blocks = blocksOf(networks);
+        out.writeLong(maxId);
+        out.writeLong(rows);
+        out.writeInt(blocks.length);
+        for (long block : blocks) {
+            out.writeLong(block);
+        }
+    }
+
+    private boolean restoreSnapshot(DataInputStream in) {
+        lock.lock();
+        try {
+            long maxId = in.readLong();
+            long rows = in.readLong();
+            if (maxId == INCOMPLETE) {
+                log.info("Suspicious IP snapshot was taken during a change, reloading from the database");
+                return false;
+            }
+            if (ipRepository.countByIdLessThanEqual(maxId) != rows) {
+                log.info("Suspicious IPs were deleted since the snapshot, reloading from the database");
+                return false;
+            }
+            int count = in.readInt();
+            long[] newer = parseBlocks(ipRepository.findByIdGreaterThan(maxId));
+            long[] blocks = new long[count + newer.length];
+            for (int i = 0; i < count; i++) {
+                blocks[i] = in.readLong();
+            }
+            System.arraycopy(newer, 0, blocks, count, newer.length);
+            snapshot = build(blocks);
+            log.info("Suspicious IP index restored from snapshot with {} blocks", blocks.length);
+            return true;
+        } catch (IOException e) {
+            log.warn("Suspicious IP snapshot could not be restored, reloading from the database", e);
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The inverse of build(), in the encoding of Ipv4.parseBlock
+    private static long[] blocksOf(int[][] networks) {
+        int count = 0;
+        for (int[] group : networks) {
+            count += group == null ? 0 : group.length;
+        }
+        long[] blocks = new long[count];
+        int i = 0;
+        for (int prefix = 0; prefix <= 32; prefix++) {
+            if (networks[prefix] != null) {
+                for (int network : networks[prefix]) {
+                    blocks[i++] = (Integer.toUnsignedLong(network) << 8) | prefix;
+                }
+            }
+        }
+        return blocks;
+    }
+
+    private int[] groupOf(int prefix) {
+        int[] group = snapshot.networks[prefix];
+        return group == null ? NONE : group;
+    }
+
+    private void replaceGroup(int prefix, int[] group) {
+        int[][] networks = snapshot.networks.clone();
+        networks[prefix] = group;
+        snapshot = new Snapshot(networks);
+    }
+
+    private static final class Snapshot {
+        // Indexed by prefix length 0..32; null when no entry uses that length
+        final int[][] networks;
+        // Prefix lengths in use, most specific first
+        final int[] prefixes;
+
+        Snapshot(int[][] networks) {
+            this.networks = networks;
+            int count = 0;
+            for (int[] group : networks) {
+                if (group != null) {
+                    count++;
+                }
+            }
+            this.prefixes = new int[count];
+            for (int prefix = 32, i = 0; prefix >= 0; prefix--) {
+                if (networks[prefix] != null) {
+                    prefixes[i++] = prefix;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package antifraud.service;
+
+import antifraud.model.FraudReason;
+import antifraud.model.TransactionValidationResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Prohibits transactions from a suspicious IP or IP range.
+ */
+@Component
+public class SuspiciousIpRule implements FraudRule {
+
+    private final SuspiciousIpService suspiciousIpService;
+
+    @Autowired
+    public SuspiciousIpRule(SuspiciousIpService suspiciousIpService) {
+        this.suspiciousIpService = suspiciousIpService;
+    }
+
+    @Override
+    public FraudReason reason() {
+        return FraudReason.IP;
+    }
+
+    @Override
+    public int cost() {
+        return COST_IN_MEMORY_LOOKUP;
+    }
+
+    @Override
+    public ScoringStage stage() {
+        return ScoringStage.BLOCKLISTS;
+    }
+
+    @Override
+    public TransactionValidationResult evaluate(ScoringContext context) {
+        return suspiciousIpService.isIpSuspicious(context.ip, context.ipAddress)
+                ? TransactionValidationResult.PROHIBITED
+                : TransactionValidationResult.ALLOWED;
+    }
+}
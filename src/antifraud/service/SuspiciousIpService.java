@@ -1,52 +1,89 @@
 package antifraud.service;
 
+import antifraud.dto.BulkImportResponse;
 import antifraud.exception.IpAddressConflictException;
 import antifraud.exception.IpAddressNotFoundException;
 import antifraud.model.SuspiciousIp;
+import antifraud.repository.BlocklistJdbcWriter;
 import antifraud.repository.SuspiciousIpRepository;
+import antifraud.util.BlocklistFeed;
+import antifraud.util.Ipv4;
+import antifraud.util.LongHashSet;
+import antifraud.util.TransactionCallbacks;
 import antifraud.util.ValidationUtil;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 public class SuspiciousIpService {
 
     private final SuspiciousIpRepository ipRepository;
+    private final SuspiciousIpIndex ipIndex;
     private final ValidationUtil validationUtil;
+    private final BlocklistJdbcWriter jdbcWriter;
+    private final int importBatchSize;
+    @PersistenceContext
+    private EntityManager entityManager;
 
     @Autowired
-    public SuspiciousIpService(SuspiciousIpRepository ipRepository, ValidationUtil validationUtil) {
+    public SuspiciousIpService(SuspiciousIpRepository ipRepository, SuspiciousIpIndex ipIndex, ValidationUtil validationUtil,
+                               BlocklistJdbcWriter jdbcWriter,
+                               @Value("${antifraud.blocklist.import-batch-size:1000}") int importBatchSize) {
         this.ipRepository = ipRepository;
+        this.ipIndex = ipIndex;
         this.validationUtil = validationUtil;
+        this.jdbcWriter = jdbcWriter;
+        this.importBatchSize = importBatchSize;
     }
 
+    /**
+     * Adds a single address or a CIDR block (e.g. 10.0.0.0/8).
+     * Entries are stored in canonical form, so 10.0.0.1/32 is saved as 10.0.0.1.
+     */
     @Transactional
     public SuspiciousIp addSuspiciousIp(String ip) {
-        if (!validationUtil.isValidIpV4(ip)) {
+        if (!validationUtil.isValidIpV4Block(ip)) {
             throw new IllegalArgumentException("Invalid IPv4 format!");
         }
-        if (ipRepository.existsByIp(ip)) {
+        long block = Ipv4.parseBlock(ip);
+        String canonical = Ipv4.formatBlock(block);
+        if (ipRepository.existsByIp(canonical)) {
             // Throw specific exception for conflict
             throw new IpAddressConflictException("IP address " + ip + " already exists!");
         }
-        SuspiciousIp suspiciousIp = new SuspiciousIp(null, ip);
-        return ipRepository.save(suspiciousIp);
+        ipIndex.beginWrite();
+        SuspiciousIp suspiciousIp = new SuspiciousIp(null, canonical);
+        SuspiciousIp saved = ipRepository.save(suspiciousIp);
+        TransactionCallbacks.afterCommit(() -> ipIndex.add(block));
+        return saved;
     }
 
     @Transactional
     public Map<String, String> deleteSuspiciousIp(String ip) {
-        if (!validationUtil.isValidIpV4(ip)) {
+        if (!validationUtil.isValidIpV4Block(ip)) {
             throw new IllegalArgumentException("Invalid IPv4 format!");
         }
-        SuspiciousIp suspiciousIp = ipRepository.findByIp(ip)
+        long block = Ipv4.parseBlock(ip);
+        SuspiciousIp suspiciousIp = ipRepository.findByIp(Ipv4.formatBlock(block))
+                // Rows saved before canonicalization may still use the original spelling
+                .or(() -> ipRepository.findByIp(ip))
                 // Throw specific exception for not found
                 .orElseThrow(() -> new IpAddressNotFoundException("IP address " + ip + " not found!"));
 
+        ipIndex.beginWrite();
         ipRepository.delete(suspiciousIp);
+        TransactionCallbacks.afterCommit(() -> ipIndex.remove(block));
         return Map.of("status", "IP " + ip + " successfully removed!");
     }
 
@@ -54,8 +91,62 @@ public class SuspiciousIpService {
         return ipRepository.findAllByOrderByIdAsc();
     }
 
+    /**
+     * Imports a CSV or NDJSON feed of addresses and CIDR blocks (see {@link BlocklistFeed})
+     * in one database transaction. Entries are stored in canonical form, so 10.0.0.1 and
+     * 10.0.0.1/32 in the same feed count as one entry and one duplicate.
+     */
+    @Transactional(rollbackFor = IOException.class)
+    public BulkImportResponse importSuspiciousIps(Reader feed) throws IOException {
+        ipIndex.beginWrite();
+        LongHashSet inserted = new LongHashSet();
+        BlocklistImport bulk = new BlocklistImport(importBatchSize, jdbcWriter::findExistingSuspiciousIps,
+                jdbcWriter::insertSuspiciousIps, canonical -> inserted.add(Ipv4.parseBlock(canonical)));
+        LongHashSet seen = new LongHashSet();
+        BlocklistFeed.forEachEntry(feed, "ip", ip -> {
+            if (ip == null || !validationUtil.isValidIpV4Block(ip)) {
+                bulk.invalid();
+                return;
+            }
+            long block = Ipv4.parseBlock(ip);
+            if (seen.add(block)) {
+                bulk.add(Ipv4.formatBlock(block));
+            } else {
+                bulk.duplicate();
+            }
+        });
+        BulkImportResponse response = bulk.finish();
+        long[] blocks = inserted.toArray();
+        TransactionCallbacks.afterCommit(() -> ipIndex.addAll(blocks));
+        return response;
+    }
+
+    /**
+     * Passes every suspicious IP to {@code consumer} in ID order; see
+     * {@link StolenCardService#streamStolenCards}.
+     */
+    @Transactional(readOnly = true)
+    public void streamSuspiciousIps(Consumer<SuspiciousIp> consumer) {
+        try (Stream<SuspiciousIp> ips = ipRepository.streamAllByOrderByIdAsc()) {
+            ips.forEach(ip -> {
+                consumer.accept(ip);
+                entityManager.detach(ip);
+            });
+        }
+    }
+
     public boolean isIpSuspicious(String ip) {
         // Format validation should happen before calling this in TransactionService
-        return ipRepository.existsByIp(ip);
+        return isIpSuspicious(ip, Ipv4.parse(ip));
+    }
+
+    /**
+     * @param address the IP as already parsed by {@link ValidationUtil#parseIpV4}
+     */
+    public boolean isIpSuspicious(String ip, long address) {
+        if (address == Ipv4.INVALID) {
+            return ipRepository.existsByIp(ip);
+        }
+        return ipIndex.contains((int) address);
     }
 }
\ No newline at end of file
@@ -0,0 +1,129 @@
+package antifraud.service;
+
+import antifraud.model.Transaction;
+import antifraud.repository.TransactionArchive;
+import antifraud.repository.TransactionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Background job that keeps the {@code transactions} table to the recent days that
+ * scoring and feedback work with. Transactions dated more than {@code age-days} days
+ * before the newest transaction are moved, one day at a time, into compressed
+ * read-only segments of the {@link TransactionArchive} and deleted from the table.
+ * <p>
+ * Age is measured against the newest transaction date rather than the clock, like the
+ * velocity windows, since dates come from the clients; a date later than the clock
+ * counts as now, so one far-future transaction can't archive everything. Each page of up to
+ * {@code batch-size} transactions is locked, written and deleted in one database
+ * transaction, so feedback racing with archival fails instead of being lost.
+ * Archived transactions still show up in a card's history but no longer take feedback.
+ */
+@Component
+public class TransactionArchiver {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionArchiver.class);
+
+    private final TransactionRepository transactionRepository;
+    private final TransactionArchive archive;
+    private final TransactionTemplate transactionTemplate;
+    private final int ageDays;
+    private final int batchSize;
+    private final Counter archived;
+
+    @Autowired
+    public TransactionArchiver(TransactionRepository transactionRepository,
+                               TransactionArchive archive,
+                               PlatformTransactionManager transactionManager,
+                               MeterRegistry meterRegistry,
+                               @Value("${antifraud.archive.age-days:30}") int ageDays,
+                               @Value("${antifraud.archive.batch-size:50000}") int batchSize) {
+        if (ageDays < 1) {
+            throw new IllegalArgumentException("Archive age must be at least one day, the correlation checks need the last hour!");
+        }
+        this.transactionRepository = transactionRepository;
+        this.archive = archive;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.ageDays = ageDays;
+        this.batchSize = batchSize;
+        this.archived = Counter.builder("antifraud.archive.transactions")
+                .description("Transactions moved from the table to the archive")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${antifraud.archive.interval-ms:3600000}",
+            initialDelayString = "${antifraud.archive.interval-ms:3600000}")
+    public void archiveOldTransactions() {
+        if (!archive.isEnabled()) {
+            return;
+        }
+        Optional<Transaction> newest = transactionRepository.findTopByOrderByDateDesc();
+        if (newest.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime anchor = newest.get().getDate().isAfter(now) ? now : newest.get().getDate();
+        LocalDateTime cutoff = anchor.toLocalDate().minusDays(ageDays).atStartOfDay();
+        long start = System.nanoTime();
+        long total = 0;
+        try {
+            Optional<Transaction> oldest;
+            while ((oldest = transactionRepository.findTopByOrderByDateAsc()).isPresent()
+                    && oldest.get().getDate().isBefore(cutoff)) {
+                LocalDate day = oldest.get().getDate().toLocalDate();
+                int moved;
+                do {
+                    moved = archivePage(day);
+                    total += moved;
+                } while (moved == batchSize);
+            }
+        } catch (RuntimeException e) {
+            log.error("Archiving transactions dated before {} failed, the next run continues", cutoff, e);
+        }
+        if (total > 0) {
+            log.info("Archived {} transactions dated before {} in {} ms", total, cutoff,
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    // Writes one segment of the day and deletes its rows; both or neither take effect
+    private int archivePage(LocalDate day) {
+        Integer moved = transactionTemplate.execute(status -> {
+            List<Transaction> page = transactionRepository.findByDateGreaterThanEqualAndDateLessThanOrderByTransactionIdAsc(
+                    day.atStartOfDay(), day.plusDays(1).atStartOfDay(), Limit.of(batchSize));
+            if (page.isEmpty()) {
+                return 0;
+            }
+            try {
+                archive.write(day, page);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write the archive segment for " + day, e);
+            }
+            List<Long> ids = new ArrayList<>(page.size());
+            for (Transaction transaction : page) {
+                ids.add(transaction.getTransactionId());
+            }
+            transactionRepository.deleteAllByIdInBatch(ids);
+            return page.size();
+        });
+        archived.increment(moved);
+        return moved;
+    }
+}
@@ -0,0 +1,494 @@
+package antifraud.service;
+
+import antifraud.dto.FraudStatsResponse;
+import antifraud.model.FraudReason;
+import antifraud.model.Region;
+import antifraud.model.Transaction;
+import antifraud.model.TransactionValidationResult;
+import antifraud.repository.StateSnapshotStore;
+import antifraud.repository.TransactionJournal;
+import antifraud.repository.TransactionRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Per-minute counters of scored transactions and feedback, kept up to date as
+ * transactions are scored and labelled, so statistics over a time range are summed
+ * from at most one bucket per minute instead of scanning the transactions table.
+ * <p>
+ * Buckets are keyed by the minute of the transaction date, like the history and the
+ * velocity windows, and feedback is counted in the bucket of the transaction it labels.
+ * They live in a ring of {@code retention} slots; a slot is taken over by the newest
+ * minute that maps to it, so minutes more than {@code retention} behind the newest
+ * date seen are dropped. Each bucket counts:
+ * <ul>
+ *     <li>transactions per region and result</li>
+ *     <li>transactions per amount bucket (powers of ten) and result, and the amount sum per result</li>
+ *     <li>reasons reported in the info field</li>
+ *     <li>feedback that disagreed with the result, per result and feedback</li>
+ * </ul>
+ * Counts are only added once the scoring or feedback transaction commits. They cover
+ * this instance only, like the in-memory velocity index.
+ * <p>
+ * The buckets are part of the state snapshot. Without one they are rebuilt from the
+ * stored transactions at startup; reasons aren't stored, so rebuilt and replayed
+ * minutes have no reason counts.
+ */
+@Component
+public class TransactionRollups implements SnapshotParticipant {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionRollups.class);
+
+    private static final String SNAPSHOT_SECTION = "rollups";
+    // Transactions read per query when rebuilding or replaying
+    private static final int REPLAY_PAGE_SIZE = 1000;
+
+    private static final TransactionValidationResult[] RESULTS = TransactionValidationResult.values();
+    private static final Region[] REGIONS = Region.values();
+    private static final FraudReason[] REASONS = FraudReason.values();
+    // Upper bounds of the amount buckets; the last bucket has none
+    private static final long[] AMOUNT_BOUNDS = {10, 100, 1_000, 10_000, 100_000, 1_000_000};
+    private static final int AMOUNT_BUCKETS = AMOUNT_BOUNDS.length + 1;
+
+    // Counter layout of a bucket
+    private static final int REGION_RESULT = 0;
+    private static final int AMOUNT_RESULT = REGION_RESULT + REGIONS.length * RESULTS.length;
+    private static final int AMOUNT_SUM = AMOUNT_RESULT + AMOUNT_BUCKETS * RESULTS.length;
+    private static final int REASON = AMOUNT_SUM + RESULTS.length;
+    private static final int FEEDBACK = REASON + REASONS.length;
+    static final int COUNTERS = FEEDBACK + RESULTS.length * RESULTS.length;
+
+    private final TransactionRepository transactionRepository;
+    private final TransactionJournal journal;
+    private final StateSnapshotStore snapshots;
+    private final int retention;
+    private final int maxSeriesPoints;
+    private final AtomicReferenceArray<Bucket> slots;
+
+    // Newest minute with a bucket, so queries without an end default to the latest data
+    private volatile long latestMinute = Long.MIN_VALUE;
+    private final RecordedIdWatermark watermark;
+    // Counted transactions above the watermark, which a restore must not replay
+    private final ConcurrentSkipListSet<Long> countedAboveWatermark = new ConcurrentSkipListSet<>();
+    // Shared by the counting of transactions; a snapshot takes it exclusively, so its IDs match its buckets
+    private final ReentrantReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+
+    @Autowired
+    public TransactionRollups(TransactionRepository transactionRepository,
+                              TransactionJournal journal,
+                              StateSnapshotStore snapshots,
+                              RecordedIdWatermark watermark,
+                              @Value("${antifraud.stats.retention-minutes:10080}") int retention,
+                              @Value("${antifraud.stats.max-series-points:1440}") int maxSeriesPoints) {
+        if (retention < 1) {
+            throw new IllegalArgumentException("Rollup retention must be positive!");
+        }
+        this.transactionRepository = transactionRepository;
+        this.journal = journal;
+        this.snapshots = snapshots;
+        this.watermark = watermark;
+        this.retention = retention;
+        this.maxSeriesPoints = maxSeriesPoints;
+        this.slots = new AtomicReferenceArray<>(retention);
+    }
+
+    /**
+     * Restores the state snapshot if there is one, otherwise rebuilds the buckets
+     * from the transactions within {@code retention} minutes of the newest one.
+     */
+    @PostConstruct
+    public void initialize() {
+        if (snapshots != null) {
+            Optional<DataInputStream> section = snapshots.section(SNAPSHOT_SECTION);
+            if (section.isPresent() && restoreSnapshot(section.get())) {
+                return;
+            }
+        }
+        rebuild();
+    }
+
+    private void rebuild() {
+        if (journal != null && journal.isEnabled()) {
+            // The journal has no date index: one pass finds the newest minute, a second counts the window
+            long[] newest = {Long.MIN_VALUE};
+            journal.forEachAfter(0, transaction -> newest[0] = Math.max(newest[0], minuteOf(transaction.getDate())));
+            journal.forEachAfter(0, transaction -> {
+                if (minuteOf(transaction.getDate()) > newest[0] - retention) {
+                    replay(transaction);
+                }
+            });
+            return;
+        }
+        transactionRepository.findTopByOrderByDateDesc().ifPresent(latest -> {
+            LocalDateTime from = latest.getDate().minusMinutes(retention - 1).withSecond(0);
+            long afterId = 0;
+            List<Transaction> page;
+            do {
+                page = transactionRepository.findByDateGreaterThanEqualAndTransactionIdGreaterThanOrderByTransactionIdAsc(
+                        from, afterId, Limit.of(REPLAY_PAGE_SIZE));
+                for (Transaction transaction : page) {
+                    replay(transaction);
+                    afterId = transaction.getTransactionId();
+                }
+            } while (page.size() == REPLAY_PAGE_SIZE);
+        });
+    }
+
+    /**
+     * Counts a stored transaction.
+     *
+     * @param reasonMask the {@link FraudReason} bits reported with the result
+     */
+    public void record(long transactionId, LocalDateTime date, Region region, long amount,
+                       TransactionValidationResult result, int reasonMask) {
+        snapshotLock.readLock().lock();
+        try {
+            long covered = watermark.lowWatermark();
+            if (transactionId > covered) {
+                countedAboveWatermark.add(transactionId);
+            }
+            countedAboveWatermark.headSet(covered, true).clear();
+            Bucket bucket = bucketFor(minuteOf(date));
+            if (bucket == null) {
+                return;
+            }
+            AtomicLongArray counters = bucket.counters;
+            int resultIndex = result.ordinal();
+            counters.incrementAndGet(REGION_RESULT + region.ordinal() * RESULTS.length + resultIndex);
+            counters.incrementAndGet(AMOUNT_RESULT + amountBucket(amount) * RESULTS.length + resultIndex);
+            counters.addAndGet(AMOUNT_SUM + resultIndex, amount);
+            while (reasonMask != 0) {
+                counters.incrementAndGet(REASON + Integer.numberOfTrailingZeros(reasonMask));
+                reasonMask &= reasonMask - 1;
+            }
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts feedback that disagreed with the result of the transaction dated {@code date}.
+     */
+    public void recordFeedback(LocalDateTime date, TransactionValidationResult result, TransactionValidationResult feedback) {
+        Bucket bucket = bucketFor(minuteOf(date));
+        if (bucket != null) {
+            bucket.counters.incrementAndGet(FEEDBACK + result.ordinal() * RESULTS.length + feedback.ordinal());
+        }
+    }
+
+    /**
+     * Statistics of the transactions dated within {@code [from, to)}, both truncated to
+     * the minute. With a {@code stepMinutes}, the response also holds one entry per step.
+     *
+     * @param from        start of the range; null for one hour before {@code to}
+     * @param to          end of the range; null for the end of the newest minute with data
+     * @param stepMinutes length of each series entry, or null for no series
+     */
+    public FraudStatsResponse query(LocalDateTime from, LocalDateTime to, Integer stepMinutes) {
+        long toMinute = to != null ? minuteOf(to) : (latestMinute == Long.MIN_VALUE ? 0 : latestMinute + 1);
+        long fromMinute = from != null ? minuteOf(from) : toMinute - 60;
+        if (fromMinute >= toMinute) {
+            throw new IllegalArgumentException("from must be at least one minute before to!");
+        }
+        long[] totals = new long[COUNTERS];
+        if (stepMinutes == null) {
+            sum(fromMinute, toMinute, totals);
+            return toResponse(fromMinute, toMinute, totals);
+        }
+        if (stepMinutes < 1) {
+            throw new IllegalArgumentException("step must be at least one minute!");
+        }
+        if ((toMinute - fromMinute + stepMinutes - 1) / stepMinutes > maxSeriesPoints) {
+            throw new IllegalArgumentException("A series can have at most " + maxSeriesPoints + " steps!");
+        }
+        List<FraudStatsResponse> series = new ArrayList<>();
+        for (long start = fromMinute; start < toMinute; start += stepMinutes) {
+            long end = Math.min(start + stepMinutes, toMinute);
+            long[] step = new long[COUNTERS];
+            sum(start, end, step);
+            for (int i = 0; i < COUNTERS; i++) {
+                totals[i] += step[i];
+            }
+            series.add(toResponse(start, end, step));
+        }
+        FraudStatsResponse response = toResponse(fromMinute, toMinute, totals);
+        response.setSeries(series);
+        return response;
+    }
+
+    // One bucket lookup per minute, or one pass over the ring for ranges longer than it
+    private void sum(long fromMinute, long toMinute, long[] into) {
+        if (toMinute - fromMinute >= retention) {
+            for (int slot = 0; slot < retention; slot++) {
+                Bucket bucket = slots.get(slot);
+                if (bucket != null && bucket.minute >= fromMinute && bucket.minute < toMinute) {
+                    bucket.addTo(into);
+                }
+            }
+            return;
+        }
+        for (long minute = fromMinute; minute < toMinute; minute++) {
+            Bucket bucket = slots.get(slotOf(minute));
+            if (bucket != null && bucket.minute == minute) {
+                bucket.addTo(into);
+            }
+        }
+    }
+
+    private static FraudStatsResponse toResponse(long fromMinute, long toMinute, long[] counters) {
+        Map<String, Long> results = new LinkedHashMap<>();
+        Map<String, Map<String, Long>> regions = new LinkedHashMap<>();
+        Map<String, Map<String, Long>> amounts = new LinkedHashMap<>();
+        Map<String, Long> reasons = new LinkedHashMap<>();
+        Map<String, Map<String, Long>> feedback = new LinkedHashMap<>();
+        long transactions = 0;
+        long amountSum = 0;
+        for (TransactionValidationResult result : RESULTS) {
+            results.put(result.name(), 0L);
+            amountSum += counters[AMOUNT_SUM + result.ordinal()];
+        }
+        for (Region region : REGIONS) {
+            Map<String, Long> byResult = new LinkedHashMap<>();
+            for (TransactionValidationResult result : RESULTS) {
+                long count = counters[REGION_RESULT + region.ordinal() * RESULTS.length + result.ordinal()];
+                byResult.put(result.name(), count);
+                results.merge(result.name(), count, Long::sum);
+                transactions += count;
+            }
+            regions.put(region.name(), byResult);
+        }
+        for (int bucket = 0; bucket < AMOUNT_BUCKETS; bucket++) {
+            Map<String, Long> byResult = new LinkedHashMap<>();
+            for (TransactionValidationResult result : RESULTS) {
+                byResult.put(result.name(), counters[AMOUNT_RESULT + bucket * RESULTS.length + result.ordinal()]);
+            }
+            amounts.put(amountLabel(bucket), byResult);
+        }
+        for (FraudReason reason : REASONS) {
+            reasons.put(reason.getCode(), counters[REASON + reason.ordinal()]);
+        }
+        for (TransactionValidationResult result : RESULTS) {
+            Map<String, Long> byFeedback = new LinkedHashMap<>();
+            for (TransactionValidationResult label : RESULTS) {
+                if (label != result) {
+                    byFeedback.put(label.name(), counters[FEEDBACK + result.ordinal() * RESULTS.length + label.ordinal()]);
+                }
+            }
+            feedback.put(result.name(), byFeedback);
+        }
+        return new FraudStatsResponse(dateOf(fromMinute), dateOf(toMinute), transactions, amountSum,
+                results, regions, amounts, reasons, feedback, null);
+    }
+
+    @Override
+    public String snapshotSection() {
+        return SNAPSHOT_SECTION;
+    }
+
+    /**
+     * Writes the watermark, the counted transactions above it, then the buckets. All are
+     * copied while no transaction is being counted, so the buckets hold exactly the
+     * transactions up to the watermark plus the listed ones, and a restore replays the
+     * rest. Replaying a counted transaction would count it twice.
+     */
+    @Override
+    public void writeSnapshot(DataOutputStream out) throws IOException {
+        long upTo;
+        Long[] counted;
+        List<long[]> buckets = new ArrayList<>();
+        snapshotLock.writeLock().lock();
+        try {
+            upTo = watermark.lowWatermark();
+            counted = countedAboveWatermark.tailSet(upTo, false).toArray(new Long[0]);
+            for (int slot = 0; slot < retention; slot++) {
+                Bucket bucket = slots.get(slot);
+                if (bucket != null) {
+                    long[] copy = new long[COUNTERS + 1];
+                    copy[0] = bucket.minute;
+                    for (int i = 0; i < COUNTERS; i++) {
+                        copy[i + 1] = bucket.counters.get(i);
+                    }
+                    buckets.add(copy);
+                }
+            }
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+        out.writeLong(upTo);
+        out.writeInt(COUNTERS);
+        out.writeInt(counted.length);
+        for (long transactionId : counted) {
+            out.writeLong(transactionId);
+        }
+        out.writeInt(buckets.size());
+        for (long[] bucket : buckets) {
+            // The minute, then the counters
+            for (long value : bucket) {
+                out.writeLong(value);
+            }
+        }
+    }
+
+    private boolean restoreSnapshot(DataInputStream in) {
+        long restoredUpTo;
+        Set<Long> counted = new HashSet<>();
+        try {
+            restoredUpTo = in.readLong();
+            // A different layout means the model enums changed since the snapshot
+            if (in.readInt() != COUNTERS) {
+                log.info("Rollup snapshot has another counter layout, rebuilding from storage");
+                return false;
+            }
+            int countedAbove = in.readInt();
+            for (int i = 0; i < countedAbove; i++) {
+                counted.add(in.readLong());
+            }
+            int buckets = in.readInt();
+            for (int i = 0; i < buckets; i++) {
+                long minute = in.readLong();
+                Bucket bucket = bucketFor(minute);
+                for (int counter = 0; counter < COUNTERS; counter++) {
+                    long value = in.readLong();
+                    if (bucket != null) {
+                        bucket.counters.addAndGet(counter, value);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Rollup snapshot could not be restored, rebuilding from storage", e);
+            clear();
+            return false;
+        }
+        // Feedback given after the snapshot to transactions it already covered is not replayed
+        long[] replayed = new long[1];
+        Consumer<Transaction> replay = transaction -> {
+            if (counted.contains(transaction.getTransactionId())) {
+                return;
+            }
+            replay(transaction);
+            replayed[0]++;
+        };
+        if (journal != null && journal.isEnabled()) {
+            journal.forEachAfter(restoredUpTo, replay);
+        } else {
+            long afterId = restoredUpTo;
+            List<Transaction> page;
+            do {
+                page = transactionRepository.findByTransactionIdGreaterThanOrderByTransactionIdAsc(afterId, Limit.of(REPLAY_PAGE_SIZE));
+                for (Transaction transaction : page) {
+                    replay.accept(transaction);
+                    afterId = transaction.getTransactionId();
+                }
+            } while (page.size() == REPLAY_PAGE_SIZE);
+        }
+        log.info("Rollups restored from snapshot, {} newer transactions replayed", replayed[0]);
+        return true;
+    }
+
+    // Stored transactions carry no reasons
+    private void replay(Transaction transaction) {
+        record(transaction.getTransactionId(), transaction.getDate(), transaction.getRegion(), transaction.getAmount(),
+                transaction.getResult(), 0);
+        String feedback = transaction.getFeedback();
+        if (feedback != null && !feedback.isEmpty()) {
+            recordFeedback(transaction.getDate(), transaction.getResult(), TransactionValidationResult.valueOf(feedback));
+        }
+    }
+
+    private void clear() {
+        for (int slot = 0; slot < retention; slot++) {
+            slots.set(slot, null);
+        }
+        latestMinute = Long.MIN_VALUE;
+    }
+
+    /**
+     * The minute's bucket, taking over its slot from an older minute, or null if a newer
+     * minute holds the slot. Counts added concurrently to the bucket being replaced are
+     * lost, but they belonged to a minute that had just left the retention anyway.
+     */
+    private Bucket bucketFor(long minute) {
+        int slot = slotOf(minute);
+        while (true) {
+            Bucket current = slots.get(slot);
+            if (current != null && current.minute == minute) {
+                return current;
+            }
+            if (current != null && current.minute > minute) {
+                return null;
+            }
+            Bucket bucket = new Bucket(minute);
+            if (slots.compareAndSet(slot, current, bucket)) {
+                if (minute > latestMinute) {
+                    latestMinute = minute;
+                }
+                return bucket;
+            }
+        }
+    }
+
+    private int slotOf(long minute) {
+        return (int) Math.floorMod(minute, (long) retention);
+    }
+
+    private static int amountBucket(long amount) {
+        for (int i = 0; i < AMOUNT_BOUNDS.length; i++) {
+            if (amount <= AMOUNT_BOUNDS[i]) {
+                return i;
+            }
+        }
+        return AMOUNT_BOUNDS.length;
+    }
+
+    // "1-10", "11-100", ..., "1000001+"
+    private static String amountLabel(int bucket) {
+        long lower = bucket == 0 ? 1 : AMOUNT_BOUNDS[bucket - 1] + 1;
+        return bucket == AMOUNT_BOUNDS.length ? lower + "+" : lower + "-" + AMOUNT_BOUNDS[bucket];
+    }
+
+    private static long minuteOf(LocalDateTime date) {
+        return Math.floorDiv(date.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    private static LocalDateTime dateOf(long minute) {
+        return LocalDateTime.ofEpochSecond(minute * 60, 0, ZoneOffset.UTC);
+    }
+
+    private static final class Bucket {
+        final long minute;
+        final AtomicLongArray counters = new AtomicLongArray(COUNTERS);
+
+        Bucket(long minute) {
+            this.minute = minute;
+        }
+
+        void addTo(long[] into) {
+            for (int i = 0; i < COUNTERS; i++) {
+                into[i] += counters.get(i);
+            }
+        }
+    }
+}
@@ -1,58 +1,274 @@
 package antifraud.service;
 
 import antifraud.dto.FeedbackRequest; // Assuming this DTO exists { long transactionId; String feedback; }
+import antifraud.dto.BinaryTransactionRequest;
 import antifraud.dto.TransactionRequest;
+import antifraud.dto.ValidatedTransactionRequest;
 import antifraud.exception.*; // Import custom exceptions
+import antifraud.model.FraudReason;
 import antifraud.model.Region;
+import antifraud.model.ScoringOutcome;
 import antifraud.model.Transaction;
 import antifraud.model.TransactionValidationResult;
+import antifraud.repository.TransactionArchive;
+import antifraud.repository.TransactionJournal;
 import antifraud.repository.TransactionRepository;
+import antifraud.util.CardNumbers;
+import antifraud.util.Ipv4;
+import antifraud.util.TransactionCallbacks;
 import antifraud.util.ValidationUtil; // Import validation utility
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Sort; // For sorting history
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional; // Import Transactional
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class TransactionService {
 
-    // Stateful limits
-    private long maxAllowed = 200;
-    private long maxManual = 1500;
-
-    // Correlation constants
-    private static final int MANUAL_CORRELATION_LIMIT = 2;
-    private static final int PROHIBITED_CORRELATION_LIMIT = 3;
-
-    private final SuspiciousIpService suspiciousIpService;
-    private final StolenCardService stolenCardService;
+    private final FraudRulePipeline rulePipeline;
+    private final AmountLimitService amountLimitService;
     private final TransactionRepository transactionRepository;
+    private final CardVelocityIndex velocityIndex;
+    private final TransactionWriteBehind writeBehind;
+    private final TransactionJournal journal;
     private final ValidationUtil validationUtil;
-    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+    private final ScoringMetrics metrics;
+    private final CardShardExecutor shardExecutor;
+    private final TransactionRollups rollups;
+    private final TransactionArchive archive;
+    private final RecordedIdWatermark watermark;
+    // Scoring manages its own transactions, so that with sharding the shard owns the whole unit of work
+    private final TransactionTemplate transactionTemplate;
+    // Correlation counts come from the transactions table, which only sees stored rows
+    private final boolean velocityFromDatabase;
+    @PersistenceContext
+    private EntityManager entityManager;
+    static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
 
 
     @Autowired
-    public TransactionService(SuspiciousIpService suspiciousIpService,
-                              StolenCardService stolenCardService,
+    public TransactionService(FraudRulePipeline rulePipeline,
+                              AmountLimitService amountLimitService,
                               TransactionRepository transactionRepository,
-                              ValidationUtil validationUtil
+                              CardVelocityIndex velocityIndex,
+                              TransactionWriteBehind writeBehind,
+                              TransactionJournal journal,
+                              ValidationUtil validationUtil,
+                              ScoringMetrics metrics,
+                              CardShardExecutor shardExecutor,
+                              TransactionRollups rollups,
+                              TransactionArchive archive,
+                              RecordedIdWatermark watermark,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${antifraud.velocity.source:memory}") String velocitySource
     ) {
-        this.suspiciousIpService = suspiciousIpService;
-        this.stolenCardService = stolenCardService;
+        this.rulePipeline = rulePipeline;
+        this.amountLimitService = amountLimitService;
         this.transactionRepository = transactionRepository;
+        this.velocityIndex = velocityIndex;
+        this.writeBehind = writeBehind;
+        this.journal = journal;
         this.validationUtil = validationUtil;
+        this.metrics = metrics;
+        this.shardExecutor = shardExecutor;
+        this.rollups = rollups;
+        this.archive = archive;
+        this.watermark = watermark;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.velocityFromDatabase = "database".equals(velocitySource);
     }
 
-    @Transactional
-    public Map<String, Object> validateTransaction(TransactionRequest request) {
+    /**
+     * Scores and saves one transaction in its own database transaction. With card
+     * sharding enabled the whole transaction runs and commits on the card's shard, so the
+     * next transaction for the card sees this one even in database velocity mode. The
+     * caller holds no connection while it waits.
+     */
+    public ScoringOutcome validateTransaction(ValidatedTransactionRequest request, String merchant) {
+        return scoreAndSave(parse(request, merchant));
+    }
+
+    /**
+     * Same as {@link #validateTransaction(ValidatedTransactionRequest, String)} for a
+     * request in the binary protocol, which needs no date or region parsing.
+     */
+    public ScoringOutcome validateTransaction(BinaryTransactionRequest request, String merchant) {
+        return scoreAndSave(parse(request, merchant));
+    }
+
+    private ScoringOutcome scoreAndSave(ScoringContext context) {
+        if (shardExecutor.isEnabled()) {
+            return shardExecutor.execute(context.number, () -> scoreAndSaveInline(context));
+        }
+        return scoreAndSaveInline(context);
+    }
+
+    private ScoringOutcome scoreAndSaveInline(ScoringContext context) {
+        return transactionTemplate.execute(status -> scoreAndSaveInTransaction(context));
+    }
+
+    private ScoringOutcome scoreAndSaveInTransaction(ScoringContext context) {
+        openWatermarkTicket();
+        ScoredTransaction scored = score(context);
+        // --- Save Transaction Attempt ---
+        long persistStart = System.nanoTime();
+        if (journal.isEnabled()) {
+            journal.save(scored.transaction);
+        } else if (writeBehind.isEnabled()) {
+            writeBehind.enqueue(scored.transaction);
+        } else {
+            // Flushed here rather than at commit so the insert shows up in the persist timer
+            transactionRepository.saveAndFlush(scored.transaction);
+        }
+        metrics.recordStage(ScoringStage.PERSIST, System.nanoTime() - persistStart);
+        TransactionCallbacks.afterCommit(scored::recordIn);
+        return scored.toOutcome();
+    }
+
+    /**
+     * Scores a batch of transactions in order and saves them in one database
+     * transaction, so the inserts go out as JDBC batches.
+     * Items are scored one after another, so later items for the same card see
+     * the earlier ones in the ip/region correlation. With card sharding enabled,
+     * items are scored on their cards' shards, so items for different cards score in
+     * parallel; the batch is then saved together from the calling thread. Until it
+     * commits or rolls back, its items count for every transaction scored meanwhile.
+     * In database velocity mode each item is stored before the next one is scored instead,
+     * without sharding, since the correlation query only sees stored rows.
+     *
+     * @return one map per request, in request order, holding either "result" and "info" or "error".
+     */
+    public List<Map<String, Object>> validateTransactions(List<ValidatedTransactionRequest> requests, String merchant) {
+        // Items that fail parsing keep their error; the rest are scored together
+        String[] errors = new String[requests.size()];
+        List<ScoringContext> contexts = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            try {
+                contexts.add(parse(requests.get(i), merchant));
+            } catch (IllegalArgumentException e) {
+                errors[i] = e.getMessage();
+            }
+        }
+        Iterator<ScoredTransaction> scored = scoreAndSaveAll(contexts).iterator();
+        List<Map<String, Object>> responses = new ArrayList<>(requests.size());
+        for (String error : errors) {
+            responses.add(error != null ? Map.of("error", error) : scored.next().toResponse());
+        }
+        return responses;
+    }
+
+    /**
+     * Batch scoring for the binary protocol, whose items were validated while decoding.
+     *
+     * @return one outcome per request, in request order
+     */
+    public List<ScoringOutcome> validateBinaryTransactions(List<BinaryTransactionRequest> requests, String merchant) {
+        List<ScoringContext> contexts = new ArrayList<>(requests.size());
+        for (BinaryTransactionRequest request : requests) {
+            contexts.add(parse(request, merchant));
+        }
+        List<ScoredTransaction> scored = scoreAndSaveAll(contexts);
+        List<ScoringOutcome> outcomes = new ArrayList<>(scored.size());
+        for (ScoredTransaction transaction : scored) {
+            outcomes.add(transaction.toOutcome());
+        }
+        return outcomes;
+    }
+
+    private List<ScoredTransaction> scoreAndSaveAll(List<ScoringContext> contexts) {
+        if (velocityFromDatabase) {
+            return transactionTemplate.execute(status -> scoreAndSaveEach(contexts));
+        }
+        // Closed once execute() returns, after the committed items were recorded in the index
+        try (CardVelocityIndex.Overlay overlay = velocityIndex.openOverlay()) {
+            for (ScoringContext context : contexts) {
+                context.overlay = overlay;
+            }
+            if (shardExecutor.isEnabled()) {
+                // Scored before the transaction starts, so no connection is held while waiting on the shards
+                List<CompletableFuture<ScoredTransaction>> sharded = new ArrayList<>(contexts.size());
+                for (ScoringContext context : contexts) {
+                    sharded.add(shardExecutor.submit(context.number, () -> score(context)));
+                }
+                List<ScoredTransaction> scored = shardExecutor.awaitAll(sharded);
+                return transactionTemplate.execute(status -> saveAll(scored));
+            }
+            return transactionTemplate.execute(status -> {
+                List<ScoredTransaction> scored = new ArrayList<>(contexts.size());
+                for (ScoringContext context : contexts) {
+                    scored.add(score(context));
+                }
+                return saveAll(scored);
+            });
+        }
+    }
+
+    // Gives up JDBC batching so that every item is visible to the correlation query of the next
+    private List<ScoredTransaction> scoreAndSaveEach(List<ScoringContext> contexts) {
+        openWatermarkTicket();
+        List<ScoredTransaction> scored = new ArrayList<>(contexts.size());
+        for (ScoringContext context : contexts) {
+            ScoredTransaction transaction = score(context);
+            long persistStart = System.nanoTime();
+            if (writeBehind.isEnabled()) {
+                writeBehind.enqueue(transaction.transaction);
+                writeBehind.flush();
+            } else {
+                transactionRepository.saveAndFlush(transaction.transaction);
+            }
+            metrics.recordStage(ScoringStage.PERSIST, System.nanoTime() - persistStart);
+            scored.add(transaction);
+        }
+        TransactionCallbacks.afterCommit(() -> scored.forEach(ScoredTransaction::recordIn));
+        return scored;
+    }
+
+    private List<ScoredTransaction> saveAll(List<ScoredTransaction> scored) {
+        openWatermarkTicket();
+        List<Transaction> transactionsToSave = new ArrayList<>(scored.size());
+        for (ScoredTransaction transaction : scored) {
+            transactionsToSave.add(transaction.transaction);
+        }
+        long persistStart = System.nanoTime();
+        if (journal.isEnabled()) {
+            journal.saveAll(transactionsToSave);
+        } else if (writeBehind.isEnabled()) {
+            writeBehind.enqueueAll(transactionsToSave);
+        } else {
+            transactionRepository.saveAll(transactionsToSave);
+            transactionRepository.flush();
+        }
+        metrics.recordStage(ScoringStage.PERSIST, System.nanoTime() - persistStart);
+        TransactionCallbacks.afterCommit(() -> scored.forEach(ScoredTransaction::recordIn));
+        return scored;
+    }
+
+    // Opened before the IDs are allocated; closed after the afterCommit recording, or on rollback
+    private void openWatermarkTicket() {
+        TransactionCallbacks.afterCompletion(watermark.open()::close);
+    }
+
+    private ScoringContext parse(ValidatedTransactionRequest validated, String merchant) {
+        TransactionRequest request = validated.getRequest();
 
         // --- Parse and Validate Date and Region ---
+        long parseStart = System.nanoTime();
         LocalDateTime transactionDate;
         try {
             transactionDate = LocalDateTime.parse(request.getDate(), DATE_TIME_FORMATTER);
@@ -65,81 +281,149 @@ public class TransactionService {
         } catch (IllegalArgumentException e) {
             throw new IllegalArgumentException("Invalid region code!");
         }
+        metrics.recordStage(ScoringStage.PARSE, System.nanoTime() - parseStart);
 
-        Long amount = request.getAmount();
-        String ip = request.getIp();
-        String number = request.getNumber();
-        Set<String> reasons = new HashSet<>();
-        TransactionValidationResult finalResult;
-        String info;
-
-        // --- Query History ---
-        LocalDateTime oneHourBefore = transactionDate.minusHours(1);
-        List<Transaction> history = transactionRepository.findByNumberAndDateBetween(number, oneHourBefore, transactionDate);
-
-        // --- Calculate Correlations ---
-        long distinctRegionCount = history.stream().map(Transaction::getRegion).filter(region -> region != transactionRegion).distinct().count();
-        long distinctIpCount = history.stream().map(Transaction::getIp).filter(histIp -> !histIp.equals(ip)).distinct().count();
-
-        // --- Check all individual conditions using current limits ---
-        boolean amountCausesManual = amount > this.maxAllowed && amount <= this.maxManual;
-        boolean amountCausesProhibited = amount > this.maxManual;
-        boolean ipIsSuspicious = suspiciousIpService.isIpSuspicious(ip);
-        boolean cardIsStolen = stolenCardService.isCardStolen(number);
-        boolean ipCorrelationCausesManual = distinctIpCount == MANUAL_CORRELATION_LIMIT;
-        boolean ipCorrelationCausesProhibited = distinctIpCount >= PROHIBITED_CORRELATION_LIMIT;
-        boolean regionCorrelationCausesManual = distinctRegionCount == MANUAL_CORRELATION_LIMIT;
-        boolean regionCorrelationCausesProhibited = distinctRegionCount >= PROHIBITED_CORRELATION_LIMIT;
-
-        // --- Determine Final Result based on highest severity ---
-        if (amountCausesProhibited || ipIsSuspicious || cardIsStolen || ipCorrelationCausesProhibited || regionCorrelationCausesProhibited) {
-            finalResult = TransactionValidationResult.PROHIBITED;
-        } else if (amountCausesManual || ipCorrelationCausesManual || regionCorrelationCausesManual) {
-            finalResult = TransactionValidationResult.MANUAL_PROCESSING;
-        } else {
-            finalResult = TransactionValidationResult.ALLOWED;
+        return new ScoringContext(request.getAmount(), request.getIp(), validated.getIpAddress(), request.getNumber(),
+                validated.getCardKey(), transactionRegion, transactionDate, merchant);
+    }
+
+    // The card and IP strings are still formatted once, since the velocity index and the stored row use them
+    private ScoringContext parse(BinaryTransactionRequest request, String merchant) {
+        long parseStart = System.nanoTime();
+        LocalDateTime transactionDate = LocalDateTime.ofEpochSecond(request.getEpochSecond(), 0, ZoneOffset.UTC);
+        String number = CardNumbers.decode(request.getCardKey());
+        String ip = Ipv4.format((int) request.getIpAddress());
+        metrics.recordStage(ScoringStage.PARSE, System.nanoTime() - parseStart);
+        return new ScoringContext(request.getAmount(), ip, request.getIpAddress(), number, request.getCardKey(),
+                request.getRegion(), transactionDate, merchant);
+    }
+
+    private ScoredTransaction score(ScoringContext context) {
+        // --- Run the fraud rules; only the reasons of the final result end up in info ---
+        rulePipeline.evaluate(context);
+        TransactionValidationResult finalResult = context.result();
+        int reasonMask = context.reportedMask();
+        metrics.recordResult(finalResult, reasonMask);
+
+        Transaction transactionToSave = new Transaction(context.amount, context.ip, context.number, context.region,
+                context.date, finalResult);
+        if (transactionToSave.getFeedback() == null) {
+            transactionToSave.setFeedback("");
+        }
+        transactionToSave.setMerchant(context.merchant);
+        // The index records it once committed; until then the batch's overlay holds it
+        if (context.overlay != null) {
+            context.overlay.record(context.number, context.date, context.ip, context.region);
         }
+        return new ScoredTransaction(transactionToSave, reasonMask);
+    }
 
-        // --- Determine Info String based ONLY on Final Result ---
-        if (finalResult == TransactionValidationResult.ALLOWED) {
-            info = "none";
-        } else {
-            if (finalResult == TransactionValidationResult.MANUAL_PROCESSING) {
-                if (amountCausesManual) reasons.add("amount");
-                if (ipCorrelationCausesManual) reasons.add("ip-correlation");
-                if (regionCorrelationCausesManual) reasons.add("region-correlation");
-            } else { // PROHIBITED
-                if (amountCausesProhibited) reasons.add("amount");
-                if (ipIsSuspicious) reasons.add("ip");
-                if (cardIsStolen) reasons.add("card-number");
-                if (ipCorrelationCausesProhibited) reasons.add("ip-correlation");
-                if (regionCorrelationCausesProhibited) reasons.add("region-correlation");
+    /**
+     * Applies feedback to many transactions in one database transaction. The
+     * transactions are loaded with one query and checked like {@link #addFeedback};
+     * valid labels then adjust the limits in transaction ID order, so the outcome
+     * doesn't depend on request order, and are written back as batched updates.
+     *
+     * @return one map per request, in request order, holding either "transaction" or
+     * "error", the exception {@link #addFeedback} would have thrown for the item
+     */
+    @Transactional
+    public List<Map<String, Object>> addFeedbackBatch(List<FeedbackRequest> requests) {
+        metrics.feedbackFlush.record(writeBehind::flush);
+        Set<Long> ids = requests.stream().map(FeedbackRequest::getTransactionId).collect(Collectors.toSet());
+        Map<Long, Transaction> stored = metrics.feedbackLookup.record(() -> findAllById(ids));
+
+        RuntimeException[] errors = new RuntimeException[requests.size()];
+        List<Transaction> labelled = new ArrayList<>(requests.size());
+        Set<Long> labelledIds = new HashSet<>();
+        for (int i = 0; i < requests.size(); i++) {
+            FeedbackRequest request = requests.get(i);
+            Transaction transaction = stored.get(request.getTransactionId());
+            if (transaction == null) {
+                errors[i] = new TransactionNotFoundException("Transaction not found!");
+                continue;
+            }
+            // A second label for the same transaction in the batch conflicts with the first
+            if (!labelledIds.add(transaction.getTransactionId())
+                    || (transaction.getFeedback() != null && !transaction.getFeedback().isEmpty())) {
+                errors[i] = new FeedbackConflictException("Feedback already provided for this transaction!");
+                continue;
             }
-            List<String> sortedReasons = new ArrayList<>(reasons);
-            Collections.sort(sortedReasons);
-            info = String.join(", ", sortedReasons);
-            if (info.isEmpty() && finalResult != TransactionValidationResult.ALLOWED) {
-                if (finalResult == TransactionValidationResult.MANUAL_PROCESSING && amountCausesManual) info = "amount";
-                else info = "unknown";
+            TransactionValidationResult feedbackEnum;
+            try {
+                feedbackEnum = TransactionValidationResult.valueOf(request.getFeedback().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                errors[i] = new IllegalArgumentException("Invalid feedback value!");
+                continue;
             }
+            if (feedbackEnum == transaction.getResult()) {
+                errors[i] = new UnprocessableFeedbackException("Feedback matches original result!");
+                continue;
+            }
+            transaction.setFeedback(feedbackEnum.name());
+            labelled.add(transaction);
         }
-        // --- Save Transaction Attempt ---
-        Transaction transactionToSave = new Transaction(amount, ip, number, transactionRegion, transactionDate, finalResult);
-        if (transactionToSave.getFeedback() == null) {
-            transactionToSave.setFeedback("");
+        labelled.sort(Comparator.comparingLong(Transaction::getTransactionId));
+
+        if (journal.isEnabled()) {
+            // Reserved before the limits change, so labels that lost a race with concurrent feedback are left out
+            Set<Long> conflicts = new HashSet<>();
+            labelled.removeIf(transaction -> {
+                boolean reserved = journal.reserveFeedback(transaction.getTransactionId());
+                if (!reserved) {
+                    conflicts.add(transaction.getTransactionId());
+                }
+                return !reserved;
+            });
+            // Written ones are released already; the rest stay unlabelled for a retry
+            TransactionCallbacks.afterCompletion(() -> labelled.forEach(
+                    transaction -> journal.releaseFeedback(transaction.getTransactionId())));
+            for (int i = 0; i < requests.size(); i++) {
+                if (errors[i] == null && conflicts.contains(requests.get(i).getTransactionId())) {
+                    errors[i] = new FeedbackConflictException("Feedback already provided for this transaction!");
+                }
+            }
+        }
+        metrics.feedbackLimits.record(() -> amountLimitService.applyFeedbackBatch(labelled));
+        if (journal.isEnabled()) {
+            metrics.feedbackPersist.record(() -> labelled.forEach(transaction -> journal.saveFeedback(
+                    transaction.getTransactionId(), TransactionValidationResult.valueOf(transaction.getFeedback()))));
+        } else {
+            // The loaded entities are managed, so flushing sends their feedback as JDBC update batches
+            metrics.feedbackPersist.record(transactionRepository::flush);
         }
-        transactionRepository.save(transactionToSave);
+        TransactionCallbacks.afterCommit(() -> labelled.forEach(this::recordFeedback));
 
-        Map<String, Object> response = new HashMap<>();
-        response.put("result", finalResult);
-        response.put("info", info);
-        return response;
+        List<Map<String, Object>> responses = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            responses.add(errors[i] != null
+                    ? Map.of("error", errors[i])
+                    : Map.of("transaction", stored.get(requests.get(i).getTransactionId())));
+        }
+        return responses;
     }
 
+    private Map<Long, Transaction> findAllById(Collection<Long> ids) {
+        Map<Long, Transaction> found = new HashMap<>(ids.size() * 2);
+        if (journal.isEnabled()) {
+            for (long id : ids) {
+                journal.findById(id).ifPresent(transaction -> found.put(id, transaction));
+            }
+        } else {
+            for (Transaction transaction : transactionRepository.findAllById(ids)) {
+                found.put(transaction.getTransactionId(), transaction);
+            }
+        }
+        return found;
+    }
 
     @Transactional
     public Transaction addFeedback(long transactionId, String feedbackValue) {
-        Transaction transaction = transactionRepository.findById(transactionId)
+        // The transaction may still be waiting in the write-behind queue
+        metrics.feedbackFlush.record(writeBehind::flush);
+        Transaction transaction = metrics.feedbackLookup.record(() -> journal.isEnabled()
+                        ? journal.findById(transactionId)
+                        : transactionRepository.findById(transactionId))
                 .orElseThrow(() -> new TransactionNotFoundException("Transaction not found!"));
 
         if (transaction.getFeedback() != null && !transaction.getFeedback().isEmpty()) {
@@ -157,72 +441,133 @@ public class TransactionService {
             throw new UnprocessableFeedbackException("Feedback matches original result!");
         }
 
-        adjustLimits(transaction.getAmount(), transaction.getResult(), feedbackEnum);
-
         transaction.setFeedback(feedbackEnum.name());
-        return transactionRepository.save(transaction);
+        if (journal.isEnabled()) {
+            // Checked again under the journal's lock, in case concurrent feedback got there first.
+            // Reserved before the limits change, like addFeedbackBatch, so the loser of the race leaves them
+            // alone, and only written once it succeeded, so a failure leaves the transaction unlabelled
+            if (!journal.reserveFeedback(transactionId)) {
+                throw new FeedbackConflictException("Feedback already provided for this transaction!");
+            }
+            TransactionCallbacks.afterCompletion(() -> journal.releaseFeedback(transactionId));
+            applyFeedbackToLimits(transaction, feedbackEnum);
+            long persistStart = System.nanoTime();
+            journal.saveFeedback(transactionId, feedbackEnum);
+            metrics.feedbackPersist.record(System.nanoTime() - persistStart, TimeUnit.NANOSECONDS);
+            TransactionCallbacks.afterCommit(() -> recordFeedback(transaction));
+            return transaction;
+        }
+        applyFeedbackToLimits(transaction, feedbackEnum);
+        Transaction saved = metrics.feedbackPersist.record(() -> transactionRepository.saveAndFlush(transaction));
+        TransactionCallbacks.afterCommit(() -> recordFeedback(saved));
+        return saved;
+    }
+
+    private void applyFeedbackToLimits(Transaction transaction, TransactionValidationResult feedback) {
+        long limitsStart = System.nanoTime();
+        amountLimitService.applyFeedback(transaction.getMerchant(), transaction.getAmount(), transaction.getResult(),
+                feedback, transaction.getTransactionId());
+        metrics.feedbackLimits.record(System.nanoTime() - limitsStart, TimeUnit.NANOSECONDS);
     }
 
+    private void recordFeedback(Transaction transaction) {
+        rollups.recordFeedback(transaction.getDate(), transaction.getResult(),
+                TransactionValidationResult.valueOf(transaction.getFeedback()));
+    }
+
+
+    /**
+     * One page of the history, keyset paginated on the transaction ID.
+     *
+     * @param afterId the last transaction ID of the previous page, 0 for the first page
+     */
+    public List<Transaction> getTransactionHistoryPage(long afterId, int limit) {
+        metrics.historyFlush.record(writeBehind::flush);
+        if (journal.isEnabled()) {
+            return metrics.historyQuery.record(() -> journal.findByTransactionIdGreaterThanOrderByTransactionIdAsc(afterId, limit));
+        }
+        return metrics.historyQuery.record(() ->
+                transactionRepository.findByTransactionIdGreaterThanOrderByTransactionIdAsc(afterId, Limit.of(limit)));
+    }
 
-    public List<Transaction> getTransactionHistory() {
-        return transactionRepository.findAll(Sort.by(Sort.Direction.ASC, "transactionId"));
+    /**
+     * Passes every transaction after {@code afterId} to {@code consumer}, in ID order.
+     * Rows are fetched in chunks and detached once consumed, so memory use doesn't
+     * grow with the size of the table.
+     */
+    @Transactional(readOnly = true)
+    public void streamTransactionHistory(long afterId, Consumer<Transaction> consumer) {
+        if (journal.isEnabled()) {
+            journal.forEachAfter(afterId, consumer);
+            return;
+        }
+        metrics.historyFlush.record(writeBehind::flush);
+        try (Stream<Transaction> history = transactionRepository.streamByTransactionIdGreaterThan(afterId)) {
+            history.forEach(transaction -> {
+                consumer.accept(transaction);
+                entityManager.detach(transaction);
+            });
+        }
     }
 
     public List<Transaction> getTransactionHistoryByNumber(String number) {
         if (!validationUtil.isValidLuhn(number)) {
             throw new IllegalArgumentException("Invalid card number format (Luhn check failed)!");
         }
-        List<Transaction> history = transactionRepository.findByNumberOrderByTransactionIdAsc(number);
+        metrics.historyFlush.record(writeBehind::flush);
+        List<Transaction> history = metrics.historyQuery.record(() -> journal.isEnabled()
+                ? journal.findByNumberOrderByTransactionIdAsc(number)
+                : transactionRepository.findByNumberOrderByTransactionIdAsc(number));
+        if (archive.isEnabled()) {
+            history = mergeArchived(history, metrics.historyArchive.record(() -> archive.findByNumber(number)));
+        }
         if (history.isEmpty()) {
             throw new TransactionNotFoundException("No history found for card number!");
         }
         return history;
     }
 
-    private void adjustLimits(long transactionAmount, TransactionValidationResult originalResult, TransactionValidationResult feedbackResult) {
-        double weight = 0.2;
-        long oldMaxAllowed = this.maxAllowed;
-        long oldMaxManual = this.maxManual;
-        double currentMaxAllowed = (double) oldMaxAllowed;
-        double currentMaxManual = (double) oldMaxManual;
-        double amount = (double) transactionAmount;
-
-        if (originalResult == TransactionValidationResult.ALLOWED) {
-            if (feedbackResult == TransactionValidationResult.MANUAL_PROCESSING) {
-                this.maxAllowed = (long) Math.ceil((1 - weight) * currentMaxAllowed - weight * amount);
-            } else { // PROHIBITED
-                this.maxAllowed = (long) Math.ceil((1 - weight) * currentMaxAllowed - weight * amount);
-                this.maxManual = (long) Math.ceil((1 - weight) * currentMaxManual - weight * amount);
-            }
-        } else if (originalResult == TransactionValidationResult.MANUAL_PROCESSING) {
-            if (feedbackResult == TransactionValidationResult.ALLOWED) {
-                this.maxAllowed = (long) Math.ceil((1 - weight) * currentMaxAllowed + weight * amount);
-            } else { // PROHIBITED
-                this.maxManual = (long) Math.ceil((1 - weight) * currentMaxManual - weight * amount);
-            }
-        } else { // PROHIBITED
-            if (feedbackResult == TransactionValidationResult.ALLOWED) {
-                this.maxAllowed = (long) Math.ceil((1 - weight) * currentMaxAllowed + weight * amount);
-                this.maxManual = (long) Math.ceil((1 - weight) * currentMaxManual + weight * amount);
-            } else { // MANUAL_PROCESSING
-                this.maxManual = (long) Math.ceil((1 - weight) * currentMaxManual + weight * amount);
-            }
+    // Archived rows in ID order with the table's rows; a row in both was archived by a run whose delete failed
+    private static List<Transaction> mergeArchived(List<Transaction> hot, List<Transaction> archived) {
+        if (archived.isEmpty()) {
+            return hot;
         }
-
-        if (this.maxAllowed <= 0) this.maxAllowed = 1;
-        if (this.maxManual <= this.maxAllowed) {
-            this.maxManual = this.maxAllowed + 1;
+        Map<Long, Transaction> merged = new TreeMap<>();
+        for (Transaction transaction : archived) {
+            merged.put(transaction.getTransactionId(), transaction);
         }
+        for (Transaction transaction : hot) {
+            merged.put(transaction.getTransactionId(), transaction);
+        }
+        return new ArrayList<>(merged.values());
     }
 
+    // A scored, not yet persisted transaction together with the reasons reported for it
+    private final class ScoredTransaction {
+        final Transaction transaction;
+        final int reasonMask;
 
-    private TransactionValidationResult getAmountResult(Long amount) {
-        if (amount <= this.maxAllowed) {
-            return TransactionValidationResult.ALLOWED;
-        } else if (amount <= this.maxManual) {
-            return TransactionValidationResult.MANUAL_PROCESSING;
-        } else {
-            return TransactionValidationResult.PROHIBITED;
+        ScoredTransaction(Transaction transaction, int reasonMask) {
+            this.transaction = transaction;
+            this.reasonMask = reasonMask;
+        }
+
+        void recordIn() {
+            velocityIndex.record(transaction);
+            rollups.record(transaction.getTransactionId(), transaction.getDate(), transaction.getRegion(),
+                    transaction.getAmount(), transaction.getResult(), reasonMask);
+            watermark.seen(transaction.getTransactionId());
+        }
+
+        ScoringOutcome toOutcome() {
+            return new ScoringOutcome(transaction.getResult(), reasonMask);
+        }
+
+        Map<String, Object> toResponse() {
+            Map<String, Object> response = new HashMap<>();
+            response.put("result", transaction.getResult());
+            response.put("info", FraudReason.info(reasonMask));
+            return response;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,290 @@
+package antifraud.service;
+
+import antifraud.model.Transaction;
+import antifraud.repository.TransactionJdbcWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.dao.NonTransientDataAccessResourceException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Optional write-behind persistence for scored transactions.
+ * <p>
+ * When enabled, scored transactions get their ID straight away and are put on a
+ * bounded queue. A background writer drains the queue and inserts them in JDBC
+ * batches. When the queue is full, the caller flushes a batch itself instead of
+ * dropping data. Everything still queued is written out when the application stops.
+ * <p>
+ * A failed batch is retried on its own, every {@code retry-interval-ms}, before the
+ * queue is drained again, so while the database is down the queue fills up and callers
+ * fail instead of piling up rows in memory. A batch rejected because of its rows, e.g.
+ * a constraint violation, is split until the rejected rows are found; the others are
+ * written, and a row rejected {@code max-attempts} times is dropped with an error log
+ * and counted in {@code antifraud.writebehind.dead.letters}.
+ */
+@Service
+public class TransactionWriteBehind implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionWriteBehind.class);
+
+    private final TransactionJdbcWriter jdbcWriter;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long retryIntervalMs;
+    private final int maxAttempts;
+    private final BlockingQueue<Transaction> queue;
+    // Held while a batch is being written, so flush() also waits for in-flight batches
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Transactions from a batch whose insert failed, retried before the queue (guarded by writeLock)
+    private final List<Transaction> retry = new ArrayList<>();
+    // Times each transaction's own insert was rejected, by ID (guarded by writeLock)
+    private final Map<Long, Integer> rejections = new HashMap<>();
+    private final Timer flushTimer;
+    private final Counter deadLetters;
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    @Autowired
+    public TransactionWriteBehind(TransactionJdbcWriter jdbcWriter,
+                                  PlatformTransactionManager transactionManager,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${antifraud.persistence.write-behind.enabled:false}") boolean enabled,
+                                  @Value("${antifraud.persistence.write-behind.queue-capacity:10000}") int queueCapacity,
+                                  @Value("${antifraud.persistence.write-behind.batch-size:500}") int batchSize,
+                                  @Value("${antifraud.persistence.write-behind.flush-interval-ms:50}") long flushIntervalMs,
+                                  @Value("${antifraud.persistence.write-behind.retry-interval-ms:1000}") long retryIntervalMs,
+                                  @Value("${antifraud.persistence.write-behind.max-attempts:3}") int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Write-behind max attempts must be positive!");
+        }
+        this.jdbcWriter = jdbcWriter;
+        // Always commit on its own, never inside a caller's transaction that might roll back
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.retryIntervalMs = retryIntervalMs;
+        this.maxAttempts = maxAttempts;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        Gauge.builder("antifraud.writebehind.queue.depth", queue, BlockingQueue::size)
+                .description("Scored transactions waiting to be written")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("antifraud.writebehind.flush")
+                .description("Time to write one batch of queued transactions")
+                .register(meterRegistry);
+        this.deadLetters = Counter.builder("antifraud.writebehind.dead.letters")
+                .description("Queued transactions dropped because the database kept rejecting them")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Assigns the transaction its ID and queues it for writing.
+     */
+    public void enqueue(Transaction transaction) {
+        transaction.setTransactionId(jdbcWriter.allocateId());
+        while (!queue.offer(transaction)) {
+            // Queue is full: help the writer rather than block indefinitely
+            writeBatch();
+        }
+    }
+
+    public void enqueueAll(List<Transaction> transactions) {
+        for (Transaction transaction : transactions) {
+            enqueue(transaction);
+        }
+    }
+
+    /**
+     * Writes everything queued so far. Called before reads that must see
+     * recently scored transactions, e.g. feedback and history. Rows the database
+     * rejects are tried up to {@code max-attempts} times and then dropped, so this
+     * only fails if the database can't be written at all.
+     */
+    public void flush() {
+        if (!enabled) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            while (!queue.isEmpty() || !retry.isEmpty()) {
+                writeBatch();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        writerThread = new Thread(this::runWriter, "transaction-write-behind");
+        writerThread.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        writerThread.interrupt();
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            flush();
+            log.info("Write-behind queue drained on shutdown");
+        } catch (RuntimeException e) {
+            log.error("Write-behind queue could not be drained on shutdown; {} transactions not written",
+                    queue.size() + retry.size(), e);
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Stop after the web server (which stops in a higher phase), so no new work arrives while draining
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    private void runWriter() {
+        while (running) {
+            try {
+                if (hasRetry()) {
+                    // Retried on a timer, even when nothing new arrives
+                    Thread.sleep(retryIntervalMs);
+                    writeBatch();
+                    continue;
+                }
+                // Rows only leave the queue under writeLock, inside writeBatch(), so flush() never
+                // returns while a row is taken but not written yet
+                if (queue.isEmpty()) {
+                    Thread.sleep(flushIntervalMs);
+                    continue;
+                }
+                writeBatch();
+            } catch (InterruptedException e) {
+                // stop() interrupts the writer; remaining items are flushed there
+                return;
+            } catch (RuntimeException e) {
+                log.error("Write-behind flush failed, retrying in {} ms", retryIntervalMs, e);
+            }
+        }
+    }
+
+    private boolean hasRetry() {
+        writeLock.lock();
+        try {
+            return !retry.isEmpty();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // The failed batch first; new transactions stay in the bounded queue until it is written
+    private void writeBatch() {
+        writeLock.lock();
+        try {
+            List<Transaction> batch = new ArrayList<>(batchSize);
+            if (!retry.isEmpty()) {
+                batch.addAll(retry);
+                retry.clear();
+            } else {
+                queue.drainTo(batch, batchSize);
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Called with writeLock held. Rows that aren't written end up in retry or dead-lettered;
+    // failures not caused by the rows are rethrown
+    private void write(List<Transaction> batch) {
+        try {
+            flushTimer.record(() -> transactionTemplate.executeWithoutResult(status -> jdbcWriter.insertAll(batch)));
+        } catch (RuntimeException e) {
+            if (!rejectsRows(e)) {
+                retry.addAll(batch);
+                throw e;
+            }
+            if (batch.size() == 1) {
+                rejected(batch.get(0), e);
+                return;
+            }
+            // Halve the batch until the rejected rows are on their own
+            List<Transaction> first = new ArrayList<>(batch.subList(0, batch.size() / 2));
+            List<Transaction> second = new ArrayList<>(batch.subList(batch.size() / 2, batch.size()));
+            try {
+                write(first);
+            } catch (RuntimeException outage) {
+                retry.addAll(second);
+                throw outage;
+            }
+            write(second);
+            return;
+        }
+        if (!rejections.isEmpty()) {
+            for (Transaction transaction : batch) {
+                rejections.remove(transaction.getTransactionId());
+            }
+        }
+    }
+
+    private void rejected(Transaction transaction, RuntimeException e) {
+        int attempts = rejections.merge(transaction.getTransactionId(), 1, Integer::sum);
+        if (attempts < maxAttempts) {
+            retry.add(transaction);
+            return;
+        }
+        rejections.remove(transaction.getTransactionId());
+        deadLetters.increment();
+        log.error("Write-behind dropped transaction {} (amount {}, date {}, merchant {}) after {} rejected inserts",
+                transaction.getTransactionId(), transaction.getAmount(), transaction.getDate(),
+                transaction.getMerchant(), attempts, e);
+    }
+
+    // Constraint violations and the like; not a lost connection or a failed transaction
+    private static boolean rejectsRows(RuntimeException e) {
+        return e instanceof NonTransientDataAccessException && !(e instanceof NonTransientDataAccessResourceException);
+    }
+}
@@ -1,5 +1,6 @@
 package antifraud.service;
 
+import antifraud.config.CredentialCache;
 import antifraud.dto.UserResponse;
 import antifraud.exception.UserNotFoundException;
 import antifraud.exception.UsernameAlreadyExistsException;
@@ -7,6 +8,7 @@ import antifraud.exception.UserRoleConflictException; // Import the new exceptio
 import antifraud.model.User;
 import antifraud.model.UserRole; // Import UserRole enum
 import antifraud.repository.UserRepository;
+import antifraud.util.TransactionCallbacks;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Sort;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -22,11 +24,13 @@ public class UserService {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final CredentialCache credentialCache;
 
     @Autowired
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, CredentialCache credentialCache) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.credentialCache = credentialCache;
     }
 
     @Transactional // Ensure atomicity
@@ -67,6 +71,7 @@ public class UserService {
         User user = userRepository.findByUsernameIgnoreCase(username)
                 .orElseThrow(() -> new UserNotFoundException("User not found!"));
         userRepository.delete(user);
+        invalidateCredentials(user.getUsername());
     }
 
 
@@ -97,7 +102,9 @@ public class UserService {
         }
 
         user.setRole(newRole);
-        return userRepository.save(user); // Return updated User entity
+        User updatedUser = userRepository.save(user);
+        invalidateCredentials(user.getUsername());
+        return updatedUser; // Return updated User entity
     }
 
     @Transactional
@@ -122,6 +129,7 @@ public class UserService {
 
         user.setAccountLocked(lock);
         userRepository.save(user);
+        invalidateCredentials(user.getUsername());
 
         String statusAction = lock ? "locked" : "unlocked";
         // Return JSON structure as defined in requirements
@@ -130,6 +138,14 @@ public class UserService {
     }
 
 
+    // Evict now so new requests stop using the cached user, and again after commit
+    // in case a concurrent request re-cached the old state before the change was visible
+    private void invalidateCredentials(String username) {
+        credentialCache.invalidate(username);
+        TransactionCallbacks.afterCommit(() -> credentialCache.invalidate(username));
+    }
+
+
     // Helper method updated to include role
     public UserResponse convertToUserResponse(User user) {
         // Ensure UserResponse DTO has a role field added
@@ -0,0 +1,83 @@
+package antifraud.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.function.Consumer;
+
+/**
+ * Reads blocklist feeds line by line, so feeds of any size can be imported
+ * without holding them in memory.
+ * <p>
+ * Each line is either CSV, whose first column is the entry, or an NDJSON object
+ * holding the entry under a named field. Blank lines, {@code #} comments and a
+ * CSV header, the first line whose first column names the field, are skipped.
+ */
+public final class BlocklistFeed {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private BlocklistFeed() {
+    }
+
+    /**
+     * Passes the entry of every line to {@code action}, or {@code null} for a line
+     * that doesn't have one (e.g. malformed JSON), so the caller can count it as invalid.
+     *
+     * @param field the NDJSON field and CSV header name, e.g. "number"
+     */
+    public static void forEachEntry(Reader reader, String field, Consumer<String> action) throws IOException {
+        BufferedReader lines = reader instanceof BufferedReader buffered ? buffered : new BufferedReader(reader);
+        boolean first = true;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith("{")) {
+                action.accept(jsonField(line, field));
+            } else {
+                String column = csvColumn(line);
+                // The header may name more columns after the field, like the rows
+                if (!(first && column.equalsIgnoreCase(field))) {
+                    action.accept(column);
+                }
+            }
+            first = false;
+        }
+    }
+
+    private static String csvColumn(String line) {
+        int comma = line.indexOf(',');
+        String column = (comma < 0 ? line : line.substring(0, comma)).strip();
+        if (column.length() >= 2 && column.startsWith("\"") && column.endsWith("\"")) {
+            column = column.substring(1, column.length() - 1);
+        }
+        return column;
+    }
+
+    // Only the top-level field is read; nested values are skipped
+    private static String jsonField(String line, String field) {
+        try (JsonParser parser = JSON.createParser(line)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (field.equals(name)) {
+                    return value == JsonToken.VALUE_STRING ? parser.getText() : null;
+                }
+                parser.skipChildren();
+            }
+            return null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
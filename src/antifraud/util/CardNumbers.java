@@ -0,0 +1,71 @@
+package antifraud.util;
+
+/**
+ * Encodes card numbers as primitive {@code long} keys for the in-memory indexes.
+ * <p>
+ * Numbers of up to 19 digits fit into an unsigned 64-bit value. Numbers with a
+ * leading zero (other than "0" itself) or more than 19 digits cannot be encoded
+ * without ambiguity; callers fall back to the database for those.
+ */
+public final class CardNumbers {
+
+    public static final long NOT_ENCODABLE = -1L; // 2^64 - 1 unsigned, which has 20 digits
+
+    public static final int MAX_DIGITS = 19;
+
+    // Largest value with MAX_DIGITS digits, 10^19 - 1, as an unsigned long
+    private static final long MAX_ENCODED = Long.parseUnsignedLong("9999999999999999999");
+
+    private CardNumbers() {
+    }
+
+    /**
+     * Encodes a string of decimal digits without allocating.
+     *
+     * @return the unsigned value, or {@link #NOT_ENCODABLE}
+     */
+    public static long encode(CharSequence number) {
+        if (number == null) {
+            return NOT_ENCODABLE;
+        }
+        int length = number.length();
+        if (length == 0 || length > MAX_DIGITS || (length > 1 && number.charAt(0) == '0')) {
+            return NOT_ENCODABLE;
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            int digit = number.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return NOT_ENCODABLE;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    public static String decode(long encoded) {
+        return Long.toUnsignedString(encoded);
+    }
+
+    /**
+     * Luhn check of an encoded number, digit by digit without formatting it.
+     *
+     * @return false for {@link #NOT_ENCODABLE} and other values of more than {@value #MAX_DIGITS} digits
+     */
+    public static boolean isLuhnValid(long encoded) {
+        if (Long.compareUnsigned(encoded, MAX_ENCODED) > 0) {
+            return false;
+        }
+        long value = encoded;
+        int sum = 0;
+        boolean alternate = false;
+        do {
+            int digit = (int) Long.remainderUnsigned(value, 10);
+            value = Long.divideUnsigned(value, 10);
+            int n = alternate ? digit * 2 : digit;
+            sum += n > 9 ? n - 9 : n;
+            alternate = !alternate;
+        } while (value != 0);
+        return sum % 10 == 0;
+    }
+}
@@ -0,0 +1,22 @@
+package antifraud.util;
+
+/**
+ * Hash mixing helpers shared by the primitive collections.
+ */
+public final class Hashing {
+
+    private Hashing() {
+    }
+
+    /**
+     * 64-bit finalizer from MurmurHash3; spreads sequential keys across all bits.
+     */
+    public static long mix64(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,122 @@
+package antifraud.util;
+
+/**
+ * Parses and formats IPv4 addresses and CIDR blocks as primitive values.
+ * <p>
+ * Addresses are returned in the low 32 bits of a {@code long} so that
+ * {@link #INVALID} can never collide with a real address. Parsing never allocates.
+ */
+public final class Ipv4 {
+
+    public static final long INVALID = -1L;
+
+    private Ipv4() {
+    }
+
+    /**
+     * Parses a dotted-quad address. Octets may have up to three digits, with
+     * leading zeros, matching the rules of the original IPv4 regex.
+     *
+     * @return the address as an unsigned 32-bit value, or {@link #INVALID}
+     */
+    public static long parse(CharSequence ip) {
+        if (ip == null) {
+            return INVALID;
+        }
+        return parse(ip, 0, ip.length());
+    }
+
+    /**
+     * Parses an address or CIDR block such as {@code 10.0.0.0/8}. A plain
+     * address is treated as a /32. Blocks with host bits set are rejected.
+     *
+     * @return {@code (address << 8) | prefixLength}, or {@link #INVALID}
+     */
+    public static long parseBlock(CharSequence block) {
+        if (block == null) {
+            return INVALID;
+        }
+        int length = block.length();
+        int slash = -1;
+        for (int i = 0; i < length; i++) {
+            if (block.charAt(i) == '/') {
+                slash = i;
+                break;
+            }
+        }
+        if (slash < 0) {
+            long address = parse(block, 0, length);
+            return address == INVALID ? INVALID : (address << 8) | 32;
+        }
+        long address = parse(block, 0, slash);
+        int digits = length - slash - 1;
+        if (address == INVALID || digits < 1 || digits > 2) {
+            return INVALID;
+        }
+        int prefixLength = 0;
+        for (int i = slash + 1; i < length; i++) {
+            int digit = block.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return INVALID;
+            }
+            prefixLength = prefixLength * 10 + digit;
+        }
+        if (prefixLength > 32 || (address & ~maskOf(prefixLength) & 0xFFFFFFFFL) != 0) {
+            return INVALID;
+        }
+        return (address << 8) | prefixLength;
+    }
+
+    public static int blockAddress(long block) {
+        return (int) (block >>> 8);
+    }
+
+    public static int blockPrefixLength(long block) {
+        return (int) (block & 0xFF);
+    }
+
+    /**
+     * Network mask for a prefix length, e.g. 24 gives 255.255.255.0.
+     */
+    public static int maskOf(int prefixLength) {
+        return prefixLength == 0 ? 0 : -1 << (32 - prefixLength);
+    }
+
+    public static String format(int address) {
+        return ((address >>> 24) & 0xFF) + "." + ((address >>> 16) & 0xFF) + "."
+                + ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
+    }
+
+    /**
+     * Canonical text of a block: a plain address for /32, otherwise {@code address/prefix}.
+     */
+    public static String formatBlock(long block) {
+        int prefixLength = blockPrefixLength(block);
+        String address = format(blockAddress(block));
+        return prefixLength == 32 ? address : address + "/" + prefixLength;
+    }
+
+    private static long parse(CharSequence ip, int start, int end) {
+        long address = 0;
+        int octets = 0;
+        int value = 0;
+        int digits = 0;
+        for (int i = start; i <= end; i++) {
+            char c = i == end ? '.' : ip.charAt(i);
+            if (c == '.') {
+                if (digits == 0 || value > 255 || ++octets > 4) {
+                    return INVALID;
+                }
+                address = (address << 8) | value;
+                value = 0;
+                digits = 0;
+            } else if (c >= '0' && c <= '9' && digits < 3) {
+                value = value * 10 + (c - '0');
+                digits++;
+            } else {
+                return INVALID;
+            }
+        }
+        return octets == 4 ? address : INVALID;
+    }
+}
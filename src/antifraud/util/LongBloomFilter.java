@@ -0,0 +1,91 @@
+package antifraud.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Bloom filter over primitive {@code long} keys. A negative answer is definite;
+ * a positive answer must be confirmed against the backing set.
+ * Lookups never allocate. Not thread-safe for concurrent writes.
+ */
+public final class LongBloomFilter {
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * @param expectedSize      number of keys the filter is sized for
+     * @param falsePositiveRate target false positive rate at {@code expectedSize} keys
+     */
+    public LongBloomFilter(int expectedSize, double falsePositiveRate) {
+        int n = Math.max(1, expectedSize);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, (m + 63) >>> 6);
+        this.bits = new long[words];
+        this.bitCount = (long) words << 6;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+    }
+
+    private LongBloomFilter(LongBloomFilter other) {
+        this.bits = other.bits.clone();
+        this.bitCount = other.bitCount;
+        this.hashCount = other.hashCount;
+    }
+
+    private LongBloomFilter(long[] bits, int hashCount) {
+        this.bits = bits;
+        this.bitCount = (long) bits.length << 6;
+        this.hashCount = hashCount;
+    }
+
+    public void put(long key) {
+        long h1 = Hashing.mix64(key);
+        long h2 = Hashing.mix64(h1) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(long key) {
+        long h1 = Hashing.mix64(key);
+        long h2 = Hashing.mix64(h1) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public LongBloomFilter copy() {
+        return new LongBloomFilter(this);
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(hashCount);
+        out.writeInt(bits.length);
+        for (long word : bits) {
+            out.writeLong(word);
+        }
+    }
+
+    /**
+     * Reads a filter written by {@link #writeTo}.
+     */
+    public static LongBloomFilter readFrom(DataInputStream in) throws IOException {
+        int hashCount = in.readInt();
+        int words = in.readInt();
+        if (hashCount < 1 || words < 1) {
+            throw new IOException("Corrupt bloom filter");
+        }
+        long[] bits = new long[words];
+        for (int i = 0; i < words; i++) {
+            bits[i] = in.readLong();
+        }
+        return new LongBloomFilter(bits, hashCount);
+    }
+}
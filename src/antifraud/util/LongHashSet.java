@@ -0,0 +1,166 @@
+package antifraud.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash set of primitive {@code long} values with linear probing.
+ * Lookups never allocate. Not thread-safe; publish instances through
+ * copy-on-write (see {@link #copy()}) when readers run concurrently.
+ */
+public final class LongHashSet {
+
+    private static final long EMPTY = 0L;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] slots;
+    private int mask;
+    private int size;
+    // Zero doubles as the empty-slot marker, so it is tracked separately
+    private boolean containsZero;
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    public LongHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        this.slots = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    private LongHashSet(LongHashSet other) {
+        this.slots = other.slots.clone();
+        this.mask = other.mask;
+        this.size = other.size;
+        this.containsZero = other.containsZero;
+    }
+
+    public boolean contains(long value) {
+        if (value == EMPTY) {
+            return containsZero;
+        }
+        int index = indexFor(value);
+        long current;
+        while ((current = slots[index]) != EMPTY) {
+            if (current == value) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+        int index = indexFor(value);
+        long current;
+        while ((current = slots[index]) != EMPTY) {
+            if (current == value) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        slots[index] = value;
+        size++;
+        if (size > slots.length * LOAD_FACTOR) {
+            resize(slots.length << 1);
+        }
+        return true;
+    }
+
+    public boolean remove(long value) {
+        if (value == EMPTY) {
+            if (!containsZero) {
+                return false;
+            }
+            containsZero = false;
+            size--;
+            return true;
+        }
+        int index = indexFor(value);
+        long current;
+        while ((current = slots[index]) != EMPTY) {
+            if (current == value) {
+                slots[index] = EMPTY;
+                size--;
+                shiftBack(index);
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public LongHashSet copy() {
+        return new LongHashSet(this);
+    }
+
+    /**
+     * Copies the values into a new array, in no particular order.
+     */
+    public long[] toArray() {
+        long[] values = new long[size];
+        int i = 0;
+        if (containsZero) {
+            values[i++] = EMPTY;
+        }
+        for (long slot : slots) {
+            if (slot != EMPTY) {
+                values[i++] = slot;
+            }
+        }
+        return values;
+    }
+
+    public void clear() {
+        Arrays.fill(slots, EMPTY);
+        size = 0;
+        containsZero = false;
+    }
+
+    // Backward-shift deletion keeps probe sequences intact without tombstones
+    private void shiftBack(int freed) {
+        int index = (freed + 1) & mask;
+        long current;
+        while ((current = slots[index]) != EMPTY) {
+            int home = indexFor(current);
+            // Move the entry if its home slot is not within (freed, index]
+            if (((index - home) & mask) >= ((index - freed) & mask)) {
+                slots[freed] = current;
+                slots[index] = EMPTY;
+                freed = index;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private void resize(int capacity) {
+        long[] old = slots;
+        slots = new long[capacity];
+        mask = capacity - 1;
+        for (long value : old) {
+            if (value != EMPTY) {
+                int index = indexFor(value);
+                while (slots[index] != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                slots[index] = value;
+            }
+        }
+    }
+
+    private int indexFor(long value) {
+        return (int) Hashing.mix64(value) & mask;
+    }
+}
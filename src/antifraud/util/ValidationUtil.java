@@ -2,38 +2,53 @@ package antifraud.util;
 
 import org.springframework.stereotype.Component; // Make it a component or keep static
 
-import java.util.regex.Pattern;
-
+/**
+ * Card number and IPv4 validation used on every scoring request.
+ * <p>
+ * The validators are single-pass and allocation-free. The {@code parse*} variants
+ * also return the parsed primitive, so later stages (blocklist lookups) don't parse
+ * the same string again.
+ */
 @Component
 public class ValidationUtil {
 
-    // Simple regex for IPv4 format validation
-    // (Note: This doesn't check for leading zeros or edge cases perfectly,
-    // using a library like Apache Commons Validator might be more robust if needed)
-    private static final Pattern IPV4_PATTERN = Pattern.compile(
-            "^((25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)\\.){3}(25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)$");
+    // Returned by parseLuhn when the number is not a Luhn-valid digit string.
+    // 2^64 - 2 unsigned has 20 digits, so it never collides with an encoded card.
+    public static final long INVALID_CARD = -2L;
 
+    // Accepts four dot-separated octets of 1-3 digits each, leading zeros allowed, values 0-255
     public boolean isValidIpV4(String ip) {
-        if (ip == null) {
-            return false;
-        }
-        return IPV4_PATTERN.matcher(ip).matches();
+        return Ipv4.parse(ip) != Ipv4.INVALID;
+    }
+
+    /**
+     * @return the address as an unsigned 32-bit value, or {@link Ipv4#INVALID}
+     */
+    public long parseIpV4(String ip) {
+        return Ipv4.parse(ip);
+    }
+
+    // Accepts a plain IPv4 address or a CIDR block with no host bits set (e.g. 10.0.0.0/8)
+    public boolean isValidIpV4Block(String block) {
+        return Ipv4.parseBlock(block) != Ipv4.INVALID;
     }
 
     // Luhn algorithm check implementation
     public boolean isValidLuhn(String number) {
-        if (number == null || number.isEmpty() || !number.matches("\\d+")) {
-            return false; // Must contain only digits
+        if (number == null || number.isEmpty()) {
+            return false;
         }
-
         int sum = 0;
         boolean alternate = false;
         for (int i = number.length() - 1; i >= 0; i--) {
-            int n = Integer.parseInt(number.substring(i, i + 1));
+            int n = number.charAt(i) - '0';
+            if (n < 0 || n > 9) {
+                return false; // Must contain only digits
+            }
             if (alternate) {
                 n *= 2;
                 if (n > 9) {
-                    n = (n % 10) + 1;
+                    n -= 9;
                 }
             }
             sum += n;
@@ -41,4 +56,37 @@ public class ValidationUtil {
         }
         return (sum % 10 == 0);
     }
-}
\ No newline at end of file
+
+    /**
+     * Validates the Luhn checksum and encodes the number in the same pass.
+     *
+     * @return the number encoded as by {@link CardNumbers#encode}; {@link CardNumbers#NOT_ENCODABLE}
+     * for valid numbers that can't be encoded (leading zero, more than 19 digits);
+     * {@link #INVALID_CARD} if the number fails validation
+     */
+    public long parseLuhn(String number) {
+        if (number == null || number.isEmpty()) {
+            return INVALID_CARD;
+        }
+        int length = number.length();
+        boolean encodable = length <= CardNumbers.MAX_DIGITS && (length == 1 || number.charAt(0) != '0');
+        long value = 0;
+        int sum = 0;
+        // Position parity from the right decides which digits are doubled
+        boolean alternate = (length & 1) == 0;
+        for (int i = 0; i < length; i++) {
+            int digit = number.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return INVALID_CARD;
+            }
+            value = value * 10 + digit;
+            int n = alternate ? digit * 2 : digit;
+            sum += n > 9 ? n - 9 : n;
+            alternate = !alternate;
+        }
+        if (sum % 10 != 0) {
+            return INVALID_CARD;
+        }
+        return encodable ? value : CardNumbers.NOT_ENCODABLE;
+    }
+}
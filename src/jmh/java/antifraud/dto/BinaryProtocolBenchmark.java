@@ -0,0 +1,77 @@
+package antifraud.dto;
+
+import antifraud.model.Region;
+import antifraud.model.ScoringOutcome;
+import antifraud.model.TransactionValidationResult;
+import antifraud.util.CardNumbers;
+import antifraud.util.Ipv4;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding one scoring request: a JSON body into a {@link TransactionRequest}, against
+ * a {@link BinaryScoringProtocol} record into a {@link BinaryTransactionRequest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryProtocolBenchmark {
+
+    private ObjectMapper objectMapper;
+    private byte[] json;
+    private ByteBuffer binary;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        json = ("{\"amount\":150,\"ip\":\"192.168.1.1\",\"number\":\"4000008449433403\","
+                + "\"region\":\"EAP\",\"date\":\"2022-01-22T16:04:00\"}").getBytes(StandardCharsets.UTF_8);
+        binary = ByteBuffer.allocate(BinaryScoringProtocol.REQUEST_SIZE);
+        BinaryScoringProtocol.encodeRequest(binary, CardNumbers.encode("4000008449433403"),
+                (int) Ipv4.parse("192.168.1.1"), Region.EAP,
+                LocalDateTime.of(2022, 1, 22, 16, 4).toEpochSecond(ZoneOffset.UTC), 150);
+    }
+
+    // Excludes bean validation and the date/region parsing that still follow for JSON
+    @Benchmark
+    public TransactionRequest jsonRequest() throws IOException {
+        return objectMapper.readValue(json, TransactionRequest.class);
+    }
+
+    // Includes all validation; nothing is left to parse afterwards
+    @Benchmark
+    public BinaryTransactionRequest binaryRequest() {
+        if (BinaryScoringProtocol.validateRequest(binary, 0) != 0) {
+            throw new IllegalStateException();
+        }
+        return BinaryScoringProtocol.decodeRequest(binary, 0);
+    }
+
+    @Benchmark
+    public ScoringOutcome binaryResponseRoundTrip() {
+        ByteBuffer out = ByteBuffer.allocate(BinaryScoringProtocol.RESPONSE_SIZE);
+        BinaryScoringProtocol.encodeOutcome(out, new ScoringOutcome(TransactionValidationResult.ALLOWED, 0));
+        out.flip();
+        return BinaryScoringProtocol.decodeOutcome(out);
+    }
+}
@@ -0,0 +1,94 @@
+package antifraud.dto;
+
+import antifraud.model.FraudReason;
+import antifraud.model.Region;
+import antifraud.model.ScoringOutcome;
+import antifraud.model.Transaction;
+import antifraud.model.TransactionValidationResult;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON serialization of the scoring response and of transaction history pages,
+ * using an ObjectMapper configured the way Spring Boot configures the application's.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionJsonBenchmark {
+
+    // Matches spring.jackson.serialization.INDENT_OUTPUT in application.properties
+    @Param({"true", "false"})
+    public boolean indent;
+
+    @Param({"1", "100"})
+    public int historySize;
+
+    private ObjectMapper objectMapper;
+    private TransactionResponse response;
+    private ScoringResponseBodies scoringResponses;
+    private ScoringOutcome outcome;
+    private List<Transaction> transactions;
+    private List<TransactionViewDTO> history;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().indentOutput(indent).build();
+        response = new TransactionResponse("PROHIBITED", "amount, ip-correlation");
+        scoringResponses = new ScoringResponseBodies(objectMapper);
+        outcome = new ScoringOutcome(TransactionValidationResult.PROHIBITED,
+                FraudReason.AMOUNT.bit() | FraudReason.IP_CORRELATION.bit());
+        transactions = new ArrayList<>(historySize);
+        LocalDateTime date = LocalDateTime.of(2022, 1, 22, 16, 0);
+        for (int i = 0; i < historySize; i++) {
+            Transaction transaction = new Transaction(150L + i, "192.168.1." + (i % 256), "4000008449433403",
+                    Region.EAP, date.plusMinutes(i), TransactionValidationResult.ALLOWED);
+            transaction.setTransactionId((long) i + 1);
+            transaction.setFeedback("");
+            transactions.add(transaction);
+        }
+        history = transactions.stream().map(TransactionViewDTO::fromEntity).toList();
+    }
+
+    @Benchmark
+    public byte[] scoringResponse() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(response);
+    }
+
+    // What the scoring endpoint does instead of scoringResponse()
+    @Benchmark
+    public byte[] precomputedScoringResponse() {
+        return scoringResponses.body(outcome);
+    }
+
+    @Benchmark
+    public byte[] history() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(history);
+    }
+
+    // Includes the entity to DTO mapping the history endpoints do before serializing
+    @Benchmark
+    public byte[] historyFromEntities() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(transactions.stream().map(TransactionViewDTO::fromEntity).toList());
+    }
+}
@@ -0,0 +1,109 @@
+package antifraud.repository;
+
+import antifraud.AntiFraudApplication;
+import antifraud.model.Region;
+import antifraud.model.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The database-backed correlation lookup for one card over the last hour: loading the
+ * entities with {@link TransactionRepository#findByNumberAndDateBetween} and counting
+ * in Java, against the {@link TransactionRepository#countCorrelations} aggregate,
+ * with and without the (number, date) index, on an in-memory H2 table of {@code rows} rows.
+ * <p>
+ * Every card has one transaction per minute and {@value #ROWS_PER_CARD} in total, so the
+ * looked-up window always holds about an hour of history whatever the table size.
+ * The 10M row table needs a few GB of heap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class CorrelationQueryBenchmark {
+
+    private static final int ROWS_PER_CARD = 60;
+    private static final LocalDateTime START = LocalDateTime.of(2022, 1, 1, 0, 0);
+
+    @Param({"1000", "100000", "10000000"})
+    public int rows;
+
+    @Param({"true", "false"})
+    public boolean indexed;
+
+    private ConfigurableApplicationContext context;
+    private TransactionRepository transactionRepository;
+    private String number;
+    private LocalDateTime date;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(AntiFraudApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:correlation-benchmark;DB_CLOSE_DELAY=-1",
+                        "spring.datasource.username=sa",
+                        "spring.datasource.password=",
+                        "spring.jpa.hibernate.ddl-auto=create-drop",
+                        "logging.level.root=WARN")
+                .run();
+        transactionRepository = context.getBean(TransactionRepository.class);
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        int cards = Math.max(1, rows / ROWS_PER_CARD);
+        // Row x belongs to card x % cards and is dated x / cards minutes after START
+        jdbcTemplate.update("INSERT INTO transactions "
+                + "(transaction_id, amount, ip, number, region, date, result, feedback, merchant) "
+                + "SELECT X, 100, CONCAT('10.0.', MOD(X, 4), '.1'), "
+                + "CONCAT('4', LPAD(CAST(MOD(X, ?) AS VARCHAR), 15, '0')), "
+                + "CASE MOD(X, 3) WHEN 0 THEN 'EAP' WHEN 1 THEN 'ECA' ELSE 'HIC' END, "
+                + "DATEADD(MINUTE, X / ?, ?), 'ALLOWED', '', 'benchmark' "
+                + "FROM SYSTEM_RANGE(0, ? - 1)", cards, cards, START, rows);
+        if (!indexed) {
+            jdbcTemplate.execute("DROP INDEX idx_transactions_number_date");
+        }
+        jdbcTemplate.execute("ANALYZE");
+        number = "4" + "0".repeat(15);
+        date = START.plusMinutes((rows - 1) / cards);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    // The path before the aggregate query: every row of the window becomes an entity
+    @Benchmark
+    public long entities() {
+        List<Transaction> history = transactionRepository.findByNumberAndDateBetween(number, date.minusHours(1), date);
+        long distinctIps = history.stream().map(Transaction::getIp).filter(ip -> !ip.equals("10.0.9.1")).distinct().count();
+        long distinctRegions = history.stream().map(Transaction::getRegion).filter(region -> region != Region.MENA).distinct().count();
+        return distinctIps + distinctRegions;
+    }
+
+    @Benchmark
+    public long aggregate() {
+        CorrelationCounts counts = transactionRepository.countCorrelations(number, date.minusHours(1), date, "10.0.9.1", Region.MENA);
+        return counts.getDistinctIps() + counts.getDistinctRegions();
+    }
+}
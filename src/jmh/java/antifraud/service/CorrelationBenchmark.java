@@ -0,0 +1,66 @@
+package antifraud.service;
+
+import antifraud.model.Region;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ip/region correlation lookups in {@link CardVelocityIndex} for a card with
+ * {@code historySize} transactions in the current window.
+ * <p>
+ * The history only uses two other IPs and two other regions, so neither count
+ * reaches its limit early and every lookup scans the whole window.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CorrelationBenchmark {
+
+    private static final String NUMBER = "4000008449433403";
+    private static final String[] IPS = {"192.168.1.1", "192.168.1.2"};
+    private static final Region[] REGIONS = {Region.EAP, Region.ECA};
+
+    @Param({"1", "16", "64", "256"})
+    public int historySize;
+
+    private CardVelocityIndex index;
+    private LocalDateTime now;
+
+    @Setup
+    public void setUp() {
+        // Storage is only used by initialize()/rebuild(), which the benchmark doesn't call
+        index = new CardVelocityIndex(null, null, null, null, historySize);
+        now = LocalDateTime.of(2022, 1, 22, 16, 0);
+        // Spread the history over the last hour so every entry is inside the window
+        long step = Math.max(1, CardVelocityIndex.WINDOW_SECONDS / historySize);
+        for (int i = 0; i < historySize; i++) {
+            LocalDateTime date = now.minusSeconds(CardVelocityIndex.WINDOW_SECONDS - 1 - i * step);
+            index.record(NUMBER, date, IPS[i % IPS.length], REGIONS[i % REGIONS.length]);
+        }
+    }
+
+    @Benchmark
+    public int distinctIps() {
+        return index.countDistinctIps(NUMBER, now, "10.0.0.1", 3);
+    }
+
+    @Benchmark
+    public int distinctRegions() {
+        return index.countDistinctRegions(NUMBER, now, Region.MENA);
+    }
+}
@@ -0,0 +1,44 @@
+package antifraud.service;
+
+import antifraud.model.FraudReason;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the "info" string of a MANUAL_PROCESSING or PROHIBITED result, from
+ * collecting the reasons to the sorted, comma separated string.
+ * Reasons are collected as a {@link FraudReason} mask the way {@link ScoringContext} does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReasonAssemblyBenchmark {
+
+    private static final FraudReason[] ALL_REASONS = {FraudReason.REGION_CORRELATION, FraudReason.IP_CORRELATION,
+            FraudReason.CARD_NUMBER, FraudReason.IP, FraudReason.AMOUNT};
+
+    @Param({"1", "3", "5"})
+    public int reasonCount;
+
+    @Benchmark
+    public String assembleInfo() {
+        int mask = 0;
+        for (int i = 0; i < reasonCount; i++) {
+            mask |= ALL_REASONS[i].bit();
+        }
+        return FraudReason.info(mask);
+    }
+}
@@ -0,0 +1,40 @@
+package antifraud.service;
+
+import antifraud.model.Region;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Date and region parsing done by {@code TransactionService} for every scored transaction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestParsingBenchmark {
+
+    public String date = "2022-01-22T16:04:00";
+    public String region = "EAP";
+
+    @Benchmark
+    public LocalDateTime parseDate() {
+        return LocalDateTime.parse(date, TransactionService.DATE_TIME_FORMATTER);
+    }
+
+    @Benchmark
+    public Region parseRegion() {
+        return Region.valueOf(region);
+    }
+}
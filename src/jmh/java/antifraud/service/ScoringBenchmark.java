@@ -0,0 +1,124 @@
+package antifraud.service;
+
+import antifraud.AntiFraudApplication;
+import antifraud.dto.TransactionRequest;
+import antifraud.dto.ValidatedTransactionRequest;
+import antifraud.model.ScoringOutcome;
+import antifraud.util.ValidationUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end, in-process scoring through {@link TransactionService#validateTransaction}
+ * (validation, correlation, blocklist lookups, limits and the insert) against an
+ * in-memory H2 database. HTTP and security are left out.
+ * <p>
+ * Each call scores the next of {@code cards} cards, one second after the previous
+ * transaction, so every card has a few transactions within the velocity hour
+ * ({@code 3600 / cards}), from changing IPs and regions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScoringBenchmark {
+
+    private static final String[] IPS = {"192.168.1.1", "192.168.1.2", "10.0.0.7", "172.16.4.20"};
+    private static final String[] REGIONS = {"EAP", "ECA", "HIC", "LAC", "MENA", "SA", "SSA"};
+
+    @Param({"false", "true"})
+    public boolean writeBehind;
+
+    @Param({"1000"})
+    public int cards;
+
+    private ConfigurableApplicationContext context;
+    private TransactionService transactionService;
+    private ValidationUtil validationUtil;
+    private String[] numbers;
+    private LocalDateTime date;
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(AntiFraudApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:scoring-benchmark;DB_CLOSE_DELAY=-1",
+                        "spring.datasource.username=sa",
+                        "spring.datasource.password=",
+                        "spring.jpa.hibernate.ddl-auto=create-drop",
+                        "spring.jpa.properties.hibernate.jdbc.batch_size=50",
+                        "spring.jpa.properties.hibernate.id.optimizer.pooled.preferred=pooled-lo",
+                        "antifraud.persistence.write-behind.enabled=" + writeBehind,
+                        "logging.level.root=WARN")
+                .run();
+        transactionService = context.getBean(TransactionService.class);
+        validationUtil = context.getBean(ValidationUtil.class);
+        numbers = new String[cards];
+        for (int i = 0; i < cards; i++) {
+            numbers[i] = luhnNumber(400000000000000L + i * 7919L);
+        }
+        date = LocalDateTime.of(2022, 1, 1, 0, 0);
+        sequence = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ScoringOutcome validateTransaction() {
+        long i = sequence++;
+        TransactionRequest request = new TransactionRequest();
+        request.setAmount(100 + i % 2000);
+        // Shifted once per round over the cards, so a card doesn't keep the same IP
+        request.setIp(IPS[(int) ((i + i / cards) % IPS.length)]);
+        request.setNumber(numbers[(int) (i % cards)]);
+        request.setRegion(REGIONS[(int) (i % REGIONS.length)]);
+        request.setDate(date.plusSeconds(i).format(TransactionService.DATE_TIME_FORMATTER));
+        // The controller does this part before calling the service
+        ValidatedTransactionRequest validated = new ValidatedTransactionRequest(request,
+                validationUtil.parseLuhn(request.getNumber()), validationUtil.parseIpV4(request.getIp()));
+        return transactionService.validateTransaction(validated, "benchmark");
+    }
+
+    // Appends the Luhn check digit to a 15 digit prefix
+    static String luhnNumber(long prefix) {
+        String digits = Long.toString(prefix);
+        int sum = 0;
+        boolean alternate = true;
+        for (int i = digits.length() - 1; i >= 0; i--) {
+            int n = digits.charAt(i) - '0';
+            if (alternate) {
+                n *= 2;
+                if (n > 9) {
+                    n -= 9;
+                }
+            }
+            sum += n;
+            alternate = !alternate;
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+}
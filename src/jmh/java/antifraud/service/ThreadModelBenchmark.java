@@ -0,0 +1,128 @@
+package antifraud.service;
+
+import antifraud.AntiFraudApplication;
+import antifraud.dto.TransactionRequest;
+import antifraud.dto.ValidatedTransactionRequest;
+import antifraud.util.ValidationUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scores {@code concurrency} transactions at once, each on its own task, on either a
+ * 200 thread platform pool (Tomcat's default maximum) or one virtual thread per task.
+ * {@code latencyMs} adds a sleep per transaction standing in for the round trips to a
+ * remote database, which the in-memory H2 used here doesn't have.
+ * <p>
+ * The virtual mode needs a Java 21 runtime ({@code -PjavaVersion=21}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ThreadModelBenchmark {
+
+    private static final int PLATFORM_POOL_SIZE = 200;
+    private static final int CARDS = 1000;
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"2000"})
+    public int concurrency;
+
+    @Param({"0", "5"})
+    public int latencyMs;
+
+    private ConfigurableApplicationContext context;
+    private TransactionService transactionService;
+    private ValidationUtil validationUtil;
+    private ExecutorService executor;
+    private String[] numbers;
+    private final AtomicLong sequence = new AtomicLong();
+    private final LocalDateTime date = LocalDateTime.of(2022, 1, 1, 0, 0);
+
+    @Setup(Level.Trial)
+    public void setUp() throws ReflectiveOperationException {
+        context = new SpringApplicationBuilder(AntiFraudApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:thread-model-benchmark;DB_CLOSE_DELAY=-1",
+                        "spring.datasource.username=sa",
+                        "spring.datasource.password=",
+                        "spring.datasource.hikari.maximum-pool-size=50",
+                        "spring.jpa.hibernate.ddl-auto=create-drop",
+                        "logging.level.root=WARN")
+                .run();
+        transactionService = context.getBean(TransactionService.class);
+        validationUtil = context.getBean(ValidationUtil.class);
+        numbers = new String[CARDS];
+        for (int i = 0; i < CARDS; i++) {
+            numbers[i] = ScoringBenchmark.luhnNumber(400000000000000L + i * 7919L);
+        }
+        if ("virtual".equals(threads)) {
+            // Looked up reflectively so the benchmarks still compile on the Java 17 toolchain
+            executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } else {
+            executor = Executors.newFixedThreadPool(PLATFORM_POOL_SIZE);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+        context.close();
+    }
+
+    @Benchmark
+    public int scoreConcurrently() throws Exception {
+        List<Future<?>> futures = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            futures.add(executor.submit(this::scoreOne));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        return futures.size();
+    }
+
+    private Object scoreOne() throws InterruptedException {
+        long i = sequence.getAndIncrement();
+        if (latencyMs > 0) {
+            Thread.sleep(latencyMs);
+        }
+        TransactionRequest request = new TransactionRequest();
+        request.setAmount(100 + i % 2000);
+        request.setIp("10.0." + (i % 4) + ".1");
+        request.setNumber(numbers[(int) (i % CARDS)]);
+        request.setRegion("EAP");
+        request.setDate(date.plusSeconds(i).format(TransactionService.DATE_TIME_FORMATTER));
+        ValidatedTransactionRequest validated = new ValidatedTransactionRequest(request,
+                validationUtil.parseLuhn(request.getNumber()), validationUtil.parseIpV4(request.getIp()));
+        return transactionService.validateTransaction(validated, "benchmark");
+    }
+}
@@ -0,0 +1,100 @@
+package antifraud.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the single-pass validators in {@link ValidationUtil} with the
+ * regex/substring implementation they replaced ({@link LegacyValidationUtil}).
+ * Run with {@code -prof gc} to see the allocation rate per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationUtilBenchmark {
+
+    @Param({"4000008449433403", "4000008449433402", "40000084494334a3"})
+    public String number;
+
+    @Param({"192.168.1.66", "255.255.255.255", "256.1.1.1"})
+    public String ip;
+
+    private final ValidationUtil validationUtil = new ValidationUtil();
+    private final LegacyValidationUtil legacy = new LegacyValidationUtil();
+
+    @Benchmark
+    public boolean luhnLegacy() {
+        return legacy.isValidLuhn(number);
+    }
+
+    @Benchmark
+    public boolean luhn() {
+        return validationUtil.isValidLuhn(number);
+    }
+
+    @Benchmark
+    public long luhnParse() {
+        return validationUtil.parseLuhn(number);
+    }
+
+    @Benchmark
+    public boolean ipV4Legacy() {
+        return legacy.isValidIpV4(ip);
+    }
+
+    @Benchmark
+    public long ipV4Parse() {
+        return validationUtil.parseIpV4(ip);
+    }
+
+    /**
+     * The validators as they were before the single-pass rewrite, kept verbatim as the baseline.
+     */
+    static final class LegacyValidationUtil {
+
+        private static final Pattern IPV4_PATTERN = Pattern.compile(
+                "^((25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)\\.){3}(25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)$");
+
+        boolean isValidIpV4(String ip) {
+            if (ip == null) {
+                return false;
+            }
+            return IPV4_PATTERN.matcher(ip).matches();
+        }
+
+        boolean isValidLuhn(String number) {
+            if (number == null || number.isEmpty() || !number.matches("\\d+")) {
+                return false;
+            }
+
+            int sum = 0;
+            boolean alternate = false;
+            for (int i = number.length() - 1; i >= 0; i--) {
+                int n = Integer.parseInt(number.substring(i, i + 1));
+                if (alternate) {
+                    n *= 2;
+                    if (n > 9) {
+                        n = (n % 10) + 1;
+                    }
+                }
+                sum += n;
+                alternate = !alternate;
+            }
+            return (sum % 10 == 0);
+        }
+    }
+}